@@ -0,0 +1,40 @@
+package astar.benchmark.jmh;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of benchmarks.jar. Runs the benchmarks with the GC profiler,
+ * so the allocation rate is reported next to the throughput and average
+ * time. Takes the usual JMH command line options, eg. to run a single map
+ * style and implementation, or just the open list comparison:
+ *
+ *   java -jar benchmarks/target/benchmarks.jar PathfinderBenchmark -p style=maze -p implementation=JumpPointMethod
+ *   java -jar benchmarks/target/benchmarks.jar OpenListBenchmark
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public class BenchmarkRunner {
+
+    /**
+     * Don't instantiate
+     */
+    private BenchmarkRunner() {}
+
+    /**
+     * Run the benchmarks
+     * @param args - JMH command line options
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
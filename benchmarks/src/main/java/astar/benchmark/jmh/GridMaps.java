@@ -0,0 +1,170 @@
+package astar.benchmark.jmh;
+
+import java.util.Random;
+
+import astar.info.Coordinate;
+import astar.info.Grid;
+
+/**
+ * Builds the grids the benchmarks search, in a few map styles. Every map is
+ * built from a fixed seed so runs are comparable, with the start node in the
+ * top left corner and the end node in the bottom right corner.
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public class GridMaps {
+    private static final long SEED = 42;
+
+    // rooms are this many cells across, walls included
+    private static final int ROOM_SIZE = 16;
+
+    /**
+     * Map styles
+     */
+    public static enum Style {
+        /**
+         * Randomly placed blocks
+         */
+        open,
+        /**
+         * A maze with corridors one cell wide and a single path between any two cells
+         */
+        maze,
+        /**
+         * A grid of rooms with a door in each wall, plus randomly placed blocks
+         */
+        rooms;
+    }
+
+    /**
+     * Don't instantiate
+     */
+    private GridMaps() {}
+
+    /**
+     * Build a square grid
+     * @param style - The style of map
+     * @param size - The size of the grid
+     * @param density - The fraction of cells to block at random (not used for mazes)
+     * @return grid with start and end nodes set
+     * @throws Exception
+     */
+    public static Grid build(Style style, int size, double density) throws Exception {
+        Grid grid = new Grid(size);
+        Random random = new Random(SEED);
+
+        switch (style) {
+            case open:
+                addRandomBlocks(grid, random, density);
+                break;
+            case maze:
+                addMaze(grid, random);
+                break;
+            case rooms:
+                addRooms(grid);
+                addRandomBlocks(grid, random, density);
+                break;
+        }
+
+        // mazes only have corridors on odd rows and columns, so start one cell in
+        Coordinate start = new Coordinate(1, 1);
+        Coordinate end = new Coordinate(size - 2 - (size % 2 == 0 ? 1 : 0), size - 2 - (size % 2 == 0 ? 1 : 0));
+        grid.setValue(start, Grid.NodeType.START);
+        grid.setValue(end, Grid.NodeType.END);
+        return grid;
+    }
+
+    /**
+     * Block cells at random
+     * @param grid
+     * @param random
+     * @param density - The fraction of cells to block
+     * @throws Exception
+     */
+    private static void addRandomBlocks(Grid grid, Random random, double density) throws Exception {
+        for (int row = 0; row < grid.getHeight(); row++) {
+            for (int col = 0; col < grid.getWidth(); col++) {
+                if (random.nextDouble() < density) {
+                    grid.setValue(new Coordinate(row, col), Grid.NodeType.BLOCK);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fill the grid with blocks and carve a maze into it, with a depth first
+     * search over the cells on odd rows and columns
+     * @param grid
+     * @param random
+     * @throws Exception
+     */
+    private static void addMaze(Grid grid, Random random) throws Exception {
+        int size = grid.getWidth();
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                if (row % 2 == 0 || col % 2 == 0) {
+                    grid.setValue(new Coordinate(row, col), Grid.NodeType.BLOCK);
+                }
+            }
+        }
+
+        // the cells on both an even row and an even column are never opened, so
+        //   diagonal moves can't cut from one corridor into another
+        int cells = (size - 1) / 2;
+        boolean[] visited = new boolean[cells * cells];
+        int[] stack = new int[cells * cells];
+        int[] rowSteps = {-1, 1, 0, 0};
+        int[] colSteps = {0, 0, -1, 1};
+        int depth = 0;
+        stack[depth++] = 0;
+        visited[0] = true;
+
+        while (depth > 0) {
+            int cell = stack[depth - 1];
+            int row = cell / cells;
+            int col = cell % cells;
+
+            // pick a random unvisited neighbour, or backtrack if there is none
+            int[] candidates = new int[4];
+            int count = 0;
+            for (int i = 0; i < 4; i++) {
+                int r = row + rowSteps[i];
+                int c = col + colSteps[i];
+                if (r >= 0 && r < cells && c >= 0 && c < cells && !visited[r * cells + c]) {
+                    candidates[count++] = i;
+                }
+            }
+            if (count == 0) {
+                depth--;
+                continue;
+            }
+
+            int direction = candidates[random.nextInt(count)];
+            int next = (row + rowSteps[direction]) * cells + col + colSteps[direction];
+            grid.setValue(new Coordinate(2 * row + 1 + rowSteps[direction], 2 * col + 1 + colSteps[direction]),
+                    Grid.NodeType.EMPTY);
+            visited[next] = true;
+            stack[depth++] = next;
+        }
+    }
+
+    /**
+     * Add walls splitting the grid into rooms, with a door in the middle of each wall
+     * @param grid
+     * @throws Exception
+     */
+    private static void addRooms(Grid grid) throws Exception {
+        int size = grid.getWidth();
+        for (int line = ROOM_SIZE; line < size; line += ROOM_SIZE) {
+            for (int i = 0; i < size; i++) {
+                // leave a door (two cells wide) in the middle of each room's wall
+                if (i % ROOM_SIZE == ROOM_SIZE / 2 || i % ROOM_SIZE == ROOM_SIZE / 2 + 1) {
+                    continue;
+                }
+                grid.setValue(new Coordinate(line, i), Grid.NodeType.BLOCK);
+                grid.setValue(new Coordinate(i, line), Grid.NodeType.BLOCK);
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package astar.benchmark.jmh;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import astar.info.Coordinate;
+import astar.info.Grid;
+import astar.pathfinder.Astar;
+import astar.pathfinder.AstarFactory;
+import astar.pathfinder.OpenList;
+
+/**
+ * Time of a full search from corner to corner on large open grids with the
+ * binary heap and the bucket queue as the open nodes. Open grids keep the
+ * most cells open at once, where the heap's O(log n) costs the most.
+ *
+ * @author Jonathan Reimels
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OpenListBenchmark {
+    @Param({"HEAP", "BUCKETS"})
+    public String openList;
+
+    @Param({"DiagonalMethod", "DijkstraMethod"})
+    public String implementation;
+
+    @Param({"512", "2048"})
+    public int size;
+
+    @Param({"0.1"})
+    public double density;
+
+    private Grid _grid;
+    private Astar _astar;
+
+    /**
+     * Build the grid and the search
+     * @throws Exception
+     */
+    @Setup
+    public void setup() throws Exception {
+        _grid = GridMaps.build(GridMaps.Style.open, size, density);
+        _astar = AstarFactory.getAstar(AstarFactory.Implementation.valueOf(implementation));
+        _astar.setOpenListType(OpenList.Type.valueOf(openList));
+        _astar.setGrid(_grid);
+    }
+
+    /**
+     * Search from the start node to the end node
+     * @return path, returned so the search isn't optimized away
+     * @throws Exception
+     */
+    @Benchmark
+    public ArrayList<Coordinate> findPath() throws Exception {
+        return _astar.findPath();
+    }
+}
@@ -0,0 +1,86 @@
+package astar.benchmark.jmh;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import astar.info.Coordinate;
+import astar.info.Grid;
+import astar.pathfinder.Astar;
+import astar.pathfinder.AstarFactory;
+
+/**
+ * Time of a full search from corner to corner for every AstarFactory
+ * implementation, over grid sizes, block densities and map styles. The
+ * search workspace is kept between invocations, as it is by the GUI and
+ * BatchSearch, so the allocation rate reported by the GC profiler is what
+ * a single search allocates. The nodes a search expands are printed at the
+ * end of each trial, to compare how much work each implementation does.
+ *
+ * @author Jonathan Reimels
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathfinderBenchmark {
+    @Param({"ManhattanMethod", "DiagonalMethod", "EuclideanMethod", "DijkstraMethod", "MyMethod", "JumpPointMethod", "LandmarkMethod"})
+    public String implementation;
+
+    @Param({"128", "512"})
+    public int size;
+
+    @Param({"0.02", "0.1", "0.3"})
+    public double density;
+
+    @Param({"open", "maze", "rooms"})
+    public String style;
+
+    private Grid _grid;
+    private Astar _astar;
+
+    /**
+     * Build the grid and the search
+     * @throws Exception
+     */
+    @Setup
+    public void setup() throws Exception {
+        _grid = GridMaps.build(GridMaps.Style.valueOf(style), size, density);
+        _astar = AstarFactory.getAstar(AstarFactory.Implementation.valueOf(implementation));
+        _astar.setGrid(_grid);
+    }
+
+    /**
+     * Search from the start node to the end node
+     * @return path, returned so the search isn't optimized away
+     * @throws Exception
+     */
+    @Benchmark
+    public ArrayList<Coordinate> findPath() throws Exception {
+        return _astar.findPath();
+    }
+
+    /**
+     * Print the nodes the search expands (every search of the map expands the same ones)
+     */
+    @TearDown
+    public void reportExpansions() {
+        System.out.println(String.format("%s on %s %dx%d, density %s: %d nodes expanded per search", _astar, style,
+                size, size, density, _astar.getStepCount()));
+    }
+}
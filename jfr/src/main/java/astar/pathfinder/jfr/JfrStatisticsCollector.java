@@ -0,0 +1,58 @@
+package astar.pathfinder.jfr;
+
+import astar.pathfinder.SearchStatistics;
+import astar.pathfinder.StatisticsCollector;
+
+/**
+ * Collector emitting a PathSearchEvent for every search. The event is only
+ * recorded while a Flight Recorder recording with it enabled is running (eg.
+ * started with jcmd <pid> JFR.start), otherwise searchStarted() returns null
+ * and the search builds no statistics for it. The event begins when the
+ * search starts, so its duration is the search's and a recording's threshold
+ * setting can pick out the slow searches.
+ *
+ * The collector is registered as a StatisticsCollector service, so having
+ * this jar on the classpath makes it the default collector of every Astar
+ * instance. It is stateless and thread safe
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public class JfrStatisticsCollector implements StatisticsCollector {
+
+    @Override
+    public Object searchStarted() {
+        PathSearchEvent event = new PathSearchEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void collect(SearchStatistics statistics, Object search) {
+        PathSearchEvent event = (PathSearchEvent) search;
+        event.end();
+        if (!event.shouldCommit()) {
+            return;
+        }
+
+        event.heuristic = statistics.getImplementation();
+        event.bidirectional = statistics.isBidirectional();
+        event.gridWidth = statistics.getGridWidth();
+        event.gridHeight = statistics.getGridHeight();
+        event.startRow = statistics.getStart().getRow();
+        event.startCol = statistics.getStart().getCol();
+        event.goalRow = statistics.getEnd().getRow();
+        event.goalCol = statistics.getEnd().getCol();
+        event.searchTime = statistics.getNanos();
+        event.expanded = statistics.getExpanded();
+        event.generated = statistics.getGenerated();
+        event.openPeak = statistics.getOpenPeak();
+        event.heuristicEvaluations = statistics.getHeuristicEvaluations();
+        event.pathLength = statistics.getPathLength();
+        event.distance = statistics.getDistance();
+        event.commit();
+    }
+}
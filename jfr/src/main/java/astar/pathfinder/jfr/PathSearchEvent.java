@@ -0,0 +1,76 @@
+package astar.pathfinder.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event for a single Astar search. Stack traces aren't
+ * recorded, the thread and time of the event are enough to match it to the
+ * request that ran the search
+ *
+ * @author Jonathan Reimels
+ *
+ */
+@Name("astar.PathSearch")
+@Label("Path Search")
+@Category({"A*", "Pathfinding"})
+@Description("A single findPath() call of an Astar implementation")
+@StackTrace(false)
+public class PathSearchEvent extends Event {
+    @Label("Heuristic")
+    @Description("The Astar implementation that ran the search")
+    public String heuristic;
+
+    @Label("Bidirectional")
+    public boolean bidirectional;
+
+    @Label("Grid Width")
+    public int gridWidth;
+
+    @Label("Grid Height")
+    public int gridHeight;
+
+    @Label("Start Row")
+    public int startRow;
+
+    @Label("Start Column")
+    public int startCol;
+
+    @Label("Goal Row")
+    public int goalRow;
+
+    @Label("Goal Column")
+    public int goalCol;
+
+    @Label("Search Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long searchTime;
+
+    @Label("Expanded")
+    @Description("Nodes expanded")
+    public int expanded;
+
+    @Label("Generated")
+    @Description("Successor nodes generated")
+    public int generated;
+
+    @Label("Open Peak")
+    @Description("Largest number of nodes in the open list")
+    public int openPeak;
+
+    @Label("Heuristic Evaluations")
+    public int heuristicEvaluations;
+
+    @Label("Path Length")
+    @Description("Coordinates in the path, not including start and goal, -1 if there is no path")
+    public int pathLength;
+
+    @Label("Distance")
+    @Description("Distance of the path, -1 if there is no path")
+    public int distance;
+}
@@ -0,0 +1,97 @@
+package astar.benchmark;
+
+import java.util.Random;
+
+import astar.info.Coordinate;
+import astar.info.Grid;
+import astar.pathfinder.Astar;
+import astar.pathfinder.AstarFactory;
+import astar.pathfinder.HistogramStatisticsCollector;
+import astar.pathfinder.LatencyHistogram;
+
+/**
+ * Command line benchmark measuring how many nodes per second each Astar
+ * implementation expands on a randomly blocked grid. Run it against two
+ * builds to compare changes to the search inner loop.
+ *
+ * Usage: ExpansionBenchmark [size] [block density] [runs] [bidirectional]
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public class ExpansionBenchmark {
+    private static final int DEFAULT_SIZE = 300;
+    private static final double DEFAULT_DENSITY = 0.2;
+    private static final int DEFAULT_RUNS = 20;
+    private static final int WARMUP_RUNS = 10;
+    private static final long SEED = 42;
+    private static final String RESULT_STRING =
+        "%-20s %12.0f expansions/s  %8.3f ms/search  p50 %8.3f ms  p99 %8.3f ms  %8d steps";
+
+    /**
+     * Build a square grid with randomly placed blocks, a start node in the top
+     * left corner and an end node in the bottom right corner
+     * @param size - The size of the grid
+     * @param density - The fraction of cells to block
+     * @return grid
+     * @throws Exception
+     */
+    public static Grid buildGrid(int size, double density) throws Exception {
+        Grid grid = new Grid(size);
+        Random random = new Random(SEED);
+
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                if (random.nextDouble() < density) {
+                    grid.setValue(new Coordinate(row, col), Grid.NodeType.BLOCK);
+                }
+            }
+        }
+
+        grid.setValue(new Coordinate(0, 0), Grid.NodeType.START);
+        grid.setValue(new Coordinate(size - 1, size - 1), Grid.NodeType.END);
+        return grid;
+    }
+
+    /**
+     * Run the benchmark
+     * @param args - optional size, block density, number of runs and whether to search bidirectionally
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SIZE;
+        double density = args.length > 1 ? Double.parseDouble(args[1]) : DEFAULT_DENSITY;
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_RUNS;
+        boolean bidirectional = args.length > 3 && Boolean.parseBoolean(args[3]);
+
+        Grid grid = buildGrid(size, density);
+        System.out.println(String.format("Grid %dx%d, block density %.2f, %d runs%s", size, size, density, runs,
+                bidirectional ? ", bidirectional" : ""));
+
+        HistogramStatisticsCollector collector = new HistogramStatisticsCollector();
+        for (AstarFactory.Implementation impl : AstarFactory.Implementation.values()) {
+            Astar astar = AstarFactory.getAstar(impl);
+            astar.setGrid(grid);
+            astar.setBidirectional(bidirectional);
+
+            // let the JIT compile the search before measuring
+            for (int i = 0; i < WARMUP_RUNS; i++) {
+                astar.findPath();
+            }
+
+            // only the measured searches go into the latency percentiles
+            astar.setStatisticsCollector(collector);
+            long steps = 0;
+            long starttime = System.nanoTime();
+            for (int i = 0; i < runs; i++) {
+                astar.findPath();
+                steps += astar.getStepCount();
+            }
+            long elapsed = System.nanoTime() - starttime;
+
+            LatencyHistogram latency = collector.getHistogram(astar.toString());
+            System.out.println(String.format(RESULT_STRING, astar, steps / (elapsed / 1e9), elapsed / 1e6 / runs,
+                    latency.getPercentile(50) / 1e6, latency.getPercentile(99) / 1e6, astar.getStepCount()));
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package astar.benchmark;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import astar.info.Coordinate;
+import astar.info.Grid;
+import astar.pathfinder.Astar;
+import astar.pathfinder.AstarFactory;
+import astar.pathfinder.HierarchicalSearch;
+
+/**
+ * Command line benchmark comparing HierarchicalSearch with a flat search
+ * (Diagonal method) on random queries over a randomly blocked grid, reporting
+ * the time and steps of each and how much longer the hierarchical paths are.
+ *
+ * Usage: HierarchicalBenchmark [size] [block density] [queries] [cluster size]
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public class HierarchicalBenchmark {
+    private static final int DEFAULT_SIZE = 1000;
+    private static final double DEFAULT_DENSITY = 0.2;
+    private static final int DEFAULT_QUERIES = 100;
+    private static final long SEED = 7;
+    private static final String RESULT_STRING = "%-20s %8.3f ms/query  %10.0f steps/query  distance %d";
+
+    /**
+     * Run the benchmark
+     * @param args - optional size, block density, number of queries and cluster size
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SIZE;
+        double density = args.length > 1 ? Double.parseDouble(args[1]) : DEFAULT_DENSITY;
+        int queries = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_QUERIES;
+        int clusterSize = args.length > 3 ? Integer.parseInt(args[3]) : HierarchicalSearch.DEFAULT_CLUSTER_SIZE;
+
+        Grid grid = ExpansionBenchmark.buildGrid(size, density);
+        System.out.println(String.format("Grid %dx%d, block density %.2f, %d queries, clusters of %d",
+                size, size, density, queries, clusterSize));
+
+        // queries between random free cells
+        Random random = new Random(SEED);
+        ArrayList<Coordinate[]> pairs = new ArrayList<Coordinate[]>();
+        while (pairs.size() < queries) {
+            Coordinate start = new Coordinate(random.nextInt(size), random.nextInt(size));
+            Coordinate end = new Coordinate(random.nextInt(size), random.nextInt(size));
+            if (!grid.isBlocked(start.getRow(), start.getCol()) && !grid.isBlocked(end.getRow(), end.getCol())) {
+                pairs.add(new Coordinate[] {start, end});
+            }
+        }
+
+        HierarchicalSearch hierarchical = new HierarchicalSearch(clusterSize);
+        hierarchical.setGrid(grid);
+        long starttime = System.nanoTime();
+        hierarchical.precompute();
+        System.out.println(String.format("Precomputed %d clusters in %.1f ms", hierarchical.getClusterBuildCount(),
+                (System.nanoTime() - starttime) / 1e6));
+
+        Astar flat = AstarFactory.getAstar(AstarFactory.Implementation.DiagonalMethod);
+        flat.setGrid(grid);
+
+        long hierarchicalNanos = 0;
+        long flatNanos = 0;
+        long hierarchicalSteps = 0;
+        long abstractSteps = 0;
+        long flatSteps = 0;
+        long hierarchicalDistance = 0;
+        long flatDistance = 0;
+        long abstractLength = 0;
+        int found = 0;
+
+        for (Coordinate[] pair : pairs) {
+            starttime = System.nanoTime();
+            ArrayList<Coordinate> path = hierarchical.findPath(pair[0], pair[1]);
+            hierarchicalNanos += System.nanoTime() - starttime;
+            hierarchicalSteps += hierarchical.getStepCount();
+            abstractSteps += hierarchical.getAbstractStepCount();
+
+            starttime = System.nanoTime();
+            ArrayList<Coordinate> flatPath = flat.findPath(pair[0], pair[1]);
+            flatNanos += System.nanoTime() - starttime;
+            flatSteps += flat.getStepCount();
+
+            // only compare the paths of queries that have one
+            if (path != null && flatPath != null) {
+                hierarchicalDistance += hierarchical.getDistance();
+                flatDistance += flat.getDistance();
+                abstractLength += hierarchical.getAbstractPathLength();
+                found++;
+            }
+        }
+
+        System.out.println(String.format(RESULT_STRING, hierarchical, hierarchicalNanos / 1e6 / queries,
+                (double) hierarchicalSteps / queries, hierarchicalDistance));
+        System.out.println(String.format(RESULT_STRING, flat, flatNanos / 1e6 / queries,
+                (double) flatSteps / queries, flatDistance));
+        System.out.println(String.format("%.1f abstract steps/query, %.1f abstract nodes/path, paths %.2f%% longer",
+                (double) abstractSteps / queries, found == 0 ? 0.0 : (double) abstractLength / found,
+                flatDistance == 0 ? 0.0 : 100.0 * (hierarchicalDistance - flatDistance) / flatDistance));
+    }
+}
@@ -0,0 +1,81 @@
+package astar.benchmark;
+
+import astar.info.Grid;
+import astar.pathfinder.Astar;
+import astar.pathfinder.AstarFactory;
+import astar.pathfinder.ParallelSearch;
+
+/**
+ * Command line benchmark comparing one search from corner to corner run by
+ * ParallelSearch with the same search run on one thread, reporting the wall
+ * clock speedup and the search overhead (how many more nodes the parallel
+ * search expands).
+ *
+ * Usage: ParallelBenchmark [size] [block density] [threads] [runs] [implementation]
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public class ParallelBenchmark {
+    private static final int DEFAULT_SIZE = 2000;
+    private static final double DEFAULT_DENSITY = 0.2;
+    private static final int DEFAULT_RUNS = 5;
+    private static final int WARMUP_RUNS = 3;
+    private static final String RESULT_STRING = "%-40s %10.3f ms/search  %10d steps  distance %d";
+
+    /**
+     * Run the benchmark
+     * @param args - optional size, block density, number of threads, number of runs and implementation
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SIZE;
+        double density = args.length > 1 ? Double.parseDouble(args[1]) : DEFAULT_DENSITY;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int runs = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_RUNS;
+        AstarFactory.Implementation impl = args.length > 4
+                ? AstarFactory.Implementation.valueOf(args[4]) : AstarFactory.Implementation.DiagonalMethod;
+
+        Grid grid = ExpansionBenchmark.buildGrid(size, density);
+        System.out.println(String.format("Grid %dx%d, block density %.2f, %d threads, %d runs", size, size, density,
+                threads, runs));
+
+        Astar sequential = AstarFactory.getAstar(impl);
+        sequential.setGrid(grid);
+        ParallelSearch parallel = new ParallelSearch(grid, impl, threads);
+
+        // let the JIT compile both searches before measuring
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            sequential.findPath();
+            parallel.findPath(grid.getStart(), grid.getEnd());
+        }
+
+        long starttime = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            sequential.findPath();
+        }
+        double sequentialMs = (System.nanoTime() - starttime) / 1e6 / runs;
+
+        starttime = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            parallel.findPath(grid.getStart(), grid.getEnd());
+        }
+        double parallelMs = (System.nanoTime() - starttime) / 1e6 / runs;
+        parallel.shutdown();
+
+        // the busiest worker over the average shows how evenly the cells were shared
+        int busiest = 0;
+        for (int steps : parallel.getWorkerStepCounts()) {
+            busiest = Math.max(busiest, steps);
+        }
+        double average = (double) parallel.getStepCount() / threads;
+
+        System.out.println(String.format(RESULT_STRING, sequential, sequentialMs, sequential.getStepCount(),
+                sequential.getDistance()));
+        System.out.println(String.format(RESULT_STRING, parallel, parallelMs, parallel.getStepCount(),
+                parallel.getDistance()));
+        System.out.println(String.format("speedup %.2fx, search overhead %.2fx, %d messages, %d reopened, load balance %.2f",
+                sequentialMs / parallelMs, (double) parallel.getStepCount() / Math.max(sequential.getStepCount(), 1),
+                parallel.getMessageCount(), parallel.getReopenedCount(), average == 0 ? 1.0 : busiest / average));
+    }
+}
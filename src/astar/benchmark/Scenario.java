@@ -0,0 +1,151 @@
+package astar.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import astar.info.Coordinate;
+
+/**
+ * One query of a MovingAI .scen file. The file is a version line followed by
+ * a tab separated line per query:
+ *
+ *   bucket, map, map width, map height, start x, start y, goal x, goal y, optimal length
+ *
+ * x is the column and y the row. The optimal length is for moves costing 1
+ * and sqrt(2) that can't cut corners, so it isn't comparable with the
+ * distances of this project's searches.
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public class Scenario {
+    private static final int FIELD_COUNT = 9;
+
+    private int _bucket;
+    private String _map;
+    private int _mapWidth;
+    private int _mapHeight;
+    private Coordinate _start;
+    private Coordinate _end;
+    private double _optimalLength;
+
+    /**
+     * Constructor
+     * @param bucket - The bucket of the query, by optimal length
+     * @param map - The map file, relative to the benchmark's map directory
+     * @param mapWidth
+     * @param mapHeight
+     * @param start
+     * @param end
+     * @param optimalLength - The optimal length given by the scenario file
+     */
+    public Scenario(int bucket, String map, int mapWidth, int mapHeight, Coordinate start, Coordinate end,
+            double optimalLength) {
+        _bucket = bucket;
+        _map = map;
+        _mapWidth = mapWidth;
+        _mapHeight = mapHeight;
+        _start = start;
+        _end = end;
+        _optimalLength = optimalLength;
+    }
+
+    /**
+     * Read every query of a scenario file
+     * @param file - The .scen file
+     * @return queries, in file order
+     * @throws IOException if the file isn't a valid scenario file
+     */
+    public static List<Scenario> read(File file) throws IOException {
+        List<Scenario> scenarios = new ArrayList<Scenario>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "US-ASCII"));
+        try {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                if (line.trim().isEmpty() || line.startsWith("version")) {
+                    continue;
+                }
+
+                String[] fields = line.split("\t");
+                if (fields.length < FIELD_COUNT) {
+                    throw new IOException("Invalid query on line " + number + ": " + file);
+                }
+                try {
+                    scenarios.add(new Scenario(Integer.parseInt(fields[0]), fields[1], Integer.parseInt(fields[2]),
+                            Integer.parseInt(fields[3]),
+                            new Coordinate(Integer.parseInt(fields[5]), Integer.parseInt(fields[4])),
+                            new Coordinate(Integer.parseInt(fields[7]), Integer.parseInt(fields[6])),
+                            Double.parseDouble(fields[8])));
+                } catch (NumberFormatException ex) {
+                    throw new IOException("Invalid query on line " + number + ": " + file);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return scenarios;
+    }
+
+    /**
+     * Get the bucket of the query, by optimal length
+     * @return bucket
+     */
+    public int getBucket() {
+        return _bucket;
+    }
+
+    /**
+     * Get the map file, relative to the benchmark's map directory
+     * @return map file name
+     */
+    public String getMap() {
+        return _map;
+    }
+
+    /**
+     * Get the width of the map the query was made for
+     * @return width
+     */
+    public int getMapWidth() {
+        return _mapWidth;
+    }
+
+    /**
+     * Get the height of the map the query was made for
+     * @return height
+     */
+    public int getMapHeight() {
+        return _mapHeight;
+    }
+
+    /**
+     * Get the coordinate to start from
+     * @return start
+     */
+    public Coordinate getStart() {
+        return _start;
+    }
+
+    /**
+     * Get the coordinate to find a path to
+     * @return end
+     */
+    public Coordinate getEnd() {
+        return _end;
+    }
+
+    /**
+     * Get the optimal length given by the scenario file
+     * @return length, with moves costing 1 and sqrt(2)
+     */
+    public double getOptimalLength() {
+        return _optimalLength;
+    }
+}
@@ -0,0 +1,236 @@
+package astar.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import astar.info.Grid;
+import astar.info.MovingAiMap;
+import astar.pathfinder.AstarFactory;
+import astar.pathfinder.BatchResult;
+import astar.pathfinder.BatchSearch;
+import astar.pathfinder.PathQuery;
+import astar.pathfinder.PathResult;
+
+/**
+ * Command line runner for the MovingAI grid benchmark sets. Runs the queries
+ * of each .scen file against its .map with an implementation, answering them
+ * in parallel with a BatchSearch, and writes a CSV line per query with its
+ * time, expansions and optimality gap.
+ *
+ * The optimal lengths in the scenario files don't allow cutting corners and
+ * cost diagonal moves sqrt(2), so the gap is measured against the distance
+ * found by a reference implementation on the same grid instead (the Diagonal
+ * method by default, which finds the shortest paths).
+ *
+ * Usage: ScenarioRunner [-threads n] [-reference implementation|none] [-maps directory]
+ *                       implementation output.csv scenario...
+ *
+ * A scenario can be a .scen file or a directory of them. Maps are looked up
+ * in the maps directory (by default the directory of the scenario file),
+ * with or without the path given in the scenario file.
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public class ScenarioRunner {
+    private static final String USAGE = "Usage: ScenarioRunner [-threads n] [-reference implementation|none]"
+            + " [-maps directory] implementation output.csv scenario...";
+    private static final String CSV_HEADER = "scenario,map,bucket,start_row,start_col,end_row,end_col,"
+            + "scenario_length,distance,reference_distance,gap,time_ms,expansions";
+    private static final String SUMMARY_STRING =
+        "%-32s %6d queries  %9.3f ms/query  %10.0f steps/query  gap %7.4f%%  %d suboptimal  %d unsolved";
+
+    private AstarFactory.Implementation _impl;
+    private AstarFactory.Implementation _reference = AstarFactory.Implementation.DiagonalMethod;
+    private int _threads = Runtime.getRuntime().availableProcessors();
+    private File _mapDirectory = null;
+
+    /**
+     * Run the scenarios
+     * @param args - options, implementation, output file and scenarios
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        ScenarioRunner runner = new ScenarioRunner();
+        int index = 0;
+        try {
+            for (; index < args.length && args[index].startsWith("-"); index += 2) {
+                String value = args[index + 1];
+                if (args[index].equals("-threads")) {
+                    runner._threads = Integer.parseInt(value);
+                } else if (args[index].equals("-reference")) {
+                    runner._reference = value.equalsIgnoreCase("none") ? null : AstarFactory.Implementation.valueOf(value);
+                } else if (args[index].equals("-maps")) {
+                    runner._mapDirectory = new File(value);
+                } else {
+                    throw new IllegalArgumentException(args[index]);
+                }
+            }
+            if (args.length - index < 3) {
+                throw new IllegalArgumentException();
+            }
+            runner._impl = AstarFactory.Implementation.valueOf(args[index]);
+        } catch (RuntimeException ex) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        // directories stand for every scenario file in them
+        List<File> scenarioFiles = new ArrayList<File>();
+        for (int i = index + 2; i < args.length; i++) {
+            addScenarioFiles(new File(args[i]), scenarioFiles);
+        }
+
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(args[index + 1]), "US-ASCII")));
+        try {
+            out.println(CSV_HEADER);
+            for (File file : scenarioFiles) {
+                runner.run(file, out);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Add a scenario file, or every scenario file in a directory and the directories below it
+     * @param file
+     * @param files - The list to add to
+     */
+    private static void addScenarioFiles(File file, List<File> files) {
+        if (!file.isDirectory()) {
+            files.add(file);
+            return;
+        }
+
+        File[] children = file.listFiles();
+        Arrays.sort(children);
+        for (File child : children) {
+            if (child.isDirectory() || child.getName().endsWith(".scen")) {
+                addScenarioFiles(child, files);
+            }
+        }
+    }
+
+    /**
+     * Run the queries of a scenario file, a map at a time, writing a line per query
+     * @param file - The .scen file
+     * @param out - The CSV to write to
+     * @throws Exception
+     */
+    private void run(File file, PrintWriter out) throws Exception {
+        List<Scenario> scenarios = Scenario.read(file);
+        long nanos = 0;
+        long steps = 0;
+        double gap = 0;
+        int compared = 0;
+        int suboptimal = 0;
+        int unsolved = 0;
+
+        // a scenario file is normally for one map, but queries are grouped by map in case it isn't
+        int first = 0;
+        while (first < scenarios.size()) {
+            String map = scenarios.get(first).getMap();
+            int last = first;
+            while (last < scenarios.size() && scenarios.get(last).getMap().equals(map)) {
+                last++;
+            }
+            List<Scenario> group = scenarios.subList(first, last);
+            first = last;
+
+            Grid grid = readMap(file, group.get(0));
+            List<PathQuery> queries = new ArrayList<PathQuery>();
+            for (Scenario scenario : group) {
+                queries.add(new PathQuery(scenario.getStart(), scenario.getEnd()));
+            }
+
+            List<PathResult> results = search(grid, _impl, queries).getResults();
+            List<PathResult> references = _reference == null ? null : search(grid, _reference, queries).getResults();
+
+            for (int i = 0; i < group.size(); i++) {
+                Scenario scenario = group.get(i);
+                PathResult result = results.get(i);
+                int reference = references == null ? -1 : references.get(i).getDistance();
+
+                // the gap is only known when both found a path
+                String gapField = "";
+                if (result.getDistance() >= 0 && reference > 0) {
+                    double queryGap = (double) (result.getDistance() - reference) / reference;
+                    gapField = String.format(Locale.ROOT, "%.6f", queryGap);
+                    gap += queryGap;
+                    compared++;
+                    if (result.getDistance() > reference) {
+                        suboptimal++;
+                    }
+                }
+                if (result.getDistance() < 0) {
+                    unsolved++;
+                }
+                nanos += result.getNanos();
+                steps += result.getStepCount();
+
+                out.println(String.format(Locale.ROOT, "%s,%s,%d,%d,%d,%d,%d,%.8f,%d,%d,%s,%.6f,%d", file.getName(),
+                        scenario.getMap(), scenario.getBucket(), scenario.getStart().getRow(),
+                        scenario.getStart().getCol(), scenario.getEnd().getRow(), scenario.getEnd().getCol(),
+                        scenario.getOptimalLength(), result.getDistance(), reference, gapField,
+                        result.getNanos() / 1e6, result.getStepCount()));
+            }
+        }
+        out.flush();
+
+        int count = Math.max(scenarios.size(), 1);
+        System.out.println(String.format(SUMMARY_STRING, file.getName(), scenarios.size(), nanos / 1e6 / count,
+                (double) steps / count, compared == 0 ? 0.0 : 100.0 * gap / compared, suboptimal, unsolved));
+    }
+
+    /**
+     * Answer queries in parallel with an implementation
+     * @param grid
+     * @param impl
+     * @param queries
+     * @return results, in query order
+     * @throws Exception
+     */
+    private BatchResult search(Grid grid, AstarFactory.Implementation impl, List<PathQuery> queries) throws Exception {
+        BatchSearch search = new BatchSearch(grid, impl, _threads);
+        try {
+            return search.search(queries);
+        } finally {
+            search.shutdown();
+        }
+    }
+
+    /**
+     * Find and read the map of a scenario, checking it's the size the scenario expects
+     * @param scenarioFile - The .scen file the scenario was read from
+     * @param scenario
+     * @return grid
+     * @throws IOException if the map can't be found or doesn't match
+     */
+    private Grid readMap(File scenarioFile, Scenario scenario) throws IOException {
+        File directory = _mapDirectory != null ? _mapDirectory : scenarioFile.getAbsoluteFile().getParentFile();
+        File file = new File(directory, scenario.getMap());
+        if (!file.isFile()) {
+            file = new File(directory, new File(scenario.getMap()).getName());
+        }
+        if (!file.isFile()) {
+            throw new IOException("Map " + scenario.getMap() + " of " + scenarioFile + " not found in " + directory);
+        }
+
+        Grid grid = MovingAiMap.read(file);
+        if (grid.getWidth() != scenario.getMapWidth() || grid.getHeight() != scenario.getMapHeight()) {
+            throw new IOException("Map " + file + " is " + grid.getWidth() + "x" + grid.getHeight() + ", "
+                    + scenarioFile + " expects " + scenario.getMapWidth() + "x" + scenario.getMapHeight());
+        }
+        return grid;
+    }
+}
@@ -0,0 +1,368 @@
+package astar.info;
+
+import java.util.Arrays;
+
+/**
+ * Connected components of the cells of a Grid that aren't blocks, so a
+ * search can tell that two cells have no path between them without
+ * exhausting every cell it can reach.
+ *
+ * The components are labelled by a flood fill on first use and then kept
+ * up to date as blocks change: removing a block joins the components around
+ * it (components are merged through a union-find over the labels), and
+ * adding one only marks the index stale (to be labelled again on next use)
+ * if the open cells around it aren't connected to each other without it, ie.
+ * if the block could have split its component.
+ *
+ * Labels are stored as a char per cell while there are fewer than 65535
+ * components, and widened to an int per cell if there are ever more.
+ *
+ * Several threads can read components at once: labelling is done under the
+ * index's lock and published by clearing the volatile stale flag last, and
+ * reading never writes. Block changes must not run alongside reads, the same
+ * as for the grid itself.
+ *
+ * @author Jonathan Reimels
+ *
+ */
+class ComponentIndex {
+    private static final int NONE = -1;
+    private static final char CHAR_NONE = Character.MAX_VALUE; // NONE in the char labels
+    private static final int DEFAULT_CAPACITY = 64;
+
+    // the cells around a cell in order round the ring, each next to the ones either side
+    private static final int[] RING_ROW_OFFSETS = {-1, -1, 0, 1, 1, 1, 0, -1};
+    private static final int[] RING_COL_OFFSETS = {0, 1, 1, 1, 0, -1, -1, -1};
+
+    private Grid _grid;
+    private char[] _charLabels = null;  // component of each cell (row * width + col), CHAR_NONE for blocks
+    private int[] _intLabels = null;    // the same, once there are too many components for chars
+    private int[] _parent;          // component each component was merged into, itself if none
+    private int[] _size;            // number of cells of each component that hasn't been merged
+    private int _count = 0;
+    private volatile boolean _stale = true;
+
+    /**
+     * Constructor
+     * @param grid - The grid to label
+     */
+    ComponentIndex(Grid grid) {
+        _grid = grid;
+    }
+
+    /**
+     * Constructor - start from the components of another index of a grid with
+     * the same blocks (eg. saved by GridFile)
+     * @param grid - The grid the components are for
+     * @param labels - The component of each cell as returned by getComponent(), -1 for blocks
+     */
+    ComponentIndex(Grid grid, int[] labels) {
+        _grid = grid;
+        _parent = new int[DEFAULT_CAPACITY];
+        _size = new int[DEFAULT_CAPACITY];
+        for (int label : labels) {
+            if (label == NONE) {
+                continue;
+            }
+            while (label >= _count) {
+                newComponent();
+            }
+            _size[label]++;
+        }
+
+        // keep them as chars if they fit
+        if (_count < CHAR_NONE) {
+            _charLabels = new char[labels.length];
+            for (int cell = 0; cell < labels.length; cell++) {
+                _charLabels[cell] = labels[cell] == NONE ? CHAR_NONE : (char) labels[cell];
+            }
+        } else {
+            _intLabels = labels;
+        }
+        _stale = false;
+    }
+
+    /**
+     * Get the component of a cell, labelling the grid first if needed
+     * @param row - The row, must be within the grid
+     * @param col - The column, must be within the grid
+     * @return component, -1 for blocks
+     */
+    int getComponent(int row, int col) {
+        if (_stale) {
+            rebuild();
+        }
+        int label = label(row * _grid.getWidth() + col);
+        return label == NONE ? NONE : find(label);
+    }
+
+    /**
+     * Update the components after a cell became a block
+     * @param row
+     * @param col
+     */
+    synchronized void blockAdded(int row, int col) {
+        if (_stale) {
+            return;
+        }
+
+        int cell = row * _grid.getWidth() + col;
+        int label = label(cell);
+        if (label == NONE) {
+            return;
+        }
+        setLabel(cell, NONE);
+        _size[find(label)]--;
+
+        if (couldSplit(row, col)) {
+            _stale = true;
+        }
+    }
+
+    /**
+     * Update the components after a cell stopped being a block
+     * @param row
+     * @param col
+     */
+    synchronized void blockRemoved(int row, int col) {
+        if (_stale) {
+            return;
+        }
+
+        // join the components of every open neighbour, or start a new one
+        int component = NONE;
+        int mask = _grid.getNeighbourMask(row, col);
+        for (int i = 0; i < Grid.NEIGHBOUR_ROW_OFFSETS.length; i++) {
+            if ((mask & (1 << i)) == 0) {
+                continue;
+            }
+            int label = label((row + Grid.NEIGHBOUR_ROW_OFFSETS[i]) * _grid.getWidth() + col + Grid.NEIGHBOUR_COL_OFFSETS[i]);
+            component = component == NONE ? find(label) : union(component, label);
+        }
+        if (component == NONE) {
+            component = newComponent();
+        }
+
+        setLabel(row * _grid.getWidth() + col, component);
+        _size[component]++;
+    }
+
+    /**
+     * Forget the components, eg. after the grid was cleared
+     */
+    synchronized void invalidate() {
+        _stale = true;
+    }
+
+    /**
+     * Check if the open cells around a new block might only have been
+     * connected through it, ie. they aren't all connected round the ring of
+     * cells around it
+     * @param row
+     * @param col
+     * @return true if the block could have split its component
+     */
+    private boolean couldSplit(int row, int col) {
+        boolean[] open = new boolean[RING_ROW_OFFSETS.length];
+        for (int i = 0; i < open.length; i++) {
+            int r = row + RING_ROW_OFFSETS[i];
+            int c = col + RING_COL_OFFSETS[i];
+            open[i] = r >= 0 && r < _grid.getHeight() && c >= 0 && c < _grid.getWidth() && !_grid.isBlocked(r, c);
+        }
+
+        // count the groups of open cells that are connected round the ring
+        boolean[] seen = new boolean[open.length];
+        int groups = 0;
+        for (int i = 0; i < open.length; i++) {
+            if (open[i] && !seen[i]) {
+                groups++;
+                markRing(open, seen, i);
+            }
+        }
+        return groups > 1;
+    }
+
+    /**
+     * Mark an open cell of the ring and every open cell connected to it round the ring
+     * @param open - The open cells of the ring
+     * @param seen - The cells marked so far
+     * @param index - The position round the ring to start from
+     */
+    private static void markRing(boolean[] open, boolean[] seen, int index) {
+        seen[index] = true;
+
+        // cells next to each other round the ring are neighbours, and the cells either
+        //   side of a corner are diagonal neighbours (even with the corner blocked)
+        int length = open.length;
+        boolean corner = RING_ROW_OFFSETS[index] != 0 && RING_COL_OFFSETS[index] != 0;
+        int[] steps = corner ? new int[] {1, -1} : new int[] {1, -1, 2, -2};
+        for (int step : steps) {
+            int next = (index + step + length) % length;
+            if (open[next] && !seen[next]) {
+                markRing(open, seen, next);
+            }
+        }
+    }
+
+    /**
+     * Label every open cell by flood filling from each unlabelled one, unless
+     * another thread did while this one waited for the lock. Readers wait for
+     * the lock while the index is stale, so the labels are filled in place
+     */
+    private synchronized void rebuild() {
+        if (!_stale) {
+            return;
+        }
+
+        int width = _grid.getWidth();
+        int height = _grid.getHeight();
+        _charLabels = new char[width * height];
+        _intLabels = null;
+        Arrays.fill(_charLabels, CHAR_NONE);
+        _parent = new int[DEFAULT_CAPACITY];
+        _size = new int[DEFAULT_CAPACITY];
+        _count = 0;
+
+        // the queue is a ring, so it only grows to the largest frontier rather than the largest component
+        int[] queue = new int[DEFAULT_CAPACITY];
+        for (int start = 0; start < width * height; start++) {
+            if (label(start) != NONE || _grid.isBlocked(start / width, start % width)) {
+                continue;
+            }
+
+            int component = newComponent();
+            setLabel(start, component);
+            queue[0] = start;
+            int head = 0;
+            int length = 1;
+            int cells = 1;
+            while (length > 0) {
+                int cell = queue[head];
+                head = (head + 1) & (queue.length - 1);
+                length--;
+
+                int row = cell / width;
+                int col = cell % width;
+                int mask = _grid.getNeighbourMask(row, col);
+                for (int i = 0; i < Grid.NEIGHBOUR_ROW_OFFSETS.length; i++) {
+                    if ((mask & (1 << i)) == 0) {
+                        continue;
+                    }
+                    int neighbour = (row + Grid.NEIGHBOUR_ROW_OFFSETS[i]) * width + col + Grid.NEIGHBOUR_COL_OFFSETS[i];
+                    if (label(neighbour) == NONE) {
+                        setLabel(neighbour, component);
+                        if (length == queue.length) {
+                            queue = growQueue(queue, head);
+                            head = 0;
+                        }
+                        queue[(head + length) & (queue.length - 1)] = neighbour;
+                        length++;
+                        cells++;
+                    }
+                }
+            }
+            _size[component] = cells;
+        }
+
+        // publish the labels once they're complete
+        _stale = false;
+    }
+
+    /**
+     * Double the capacity of a full ring queue
+     * @param queue - The queue, its length a power of 2
+     * @param head - The position of the first cell in the queue
+     * @return the larger queue, starting at position 0
+     */
+    private static int[] growQueue(int[] queue, int head) {
+        int[] grown = new int[queue.length * 2];
+        System.arraycopy(queue, head, grown, 0, queue.length - head);
+        System.arraycopy(queue, 0, grown, queue.length - head, head);
+        return grown;
+    }
+
+    /**
+     * Get the label of a cell
+     * @param cell - The cell index (row * width + col)
+     * @return label, NONE for blocks
+     */
+    private int label(int cell) {
+        char[] chars = _charLabels;
+        if (chars != null) {
+            char label = chars[cell];
+            return label == CHAR_NONE ? NONE : label;
+        }
+        return _intLabels[cell];
+    }
+
+    /**
+     * Set the label of a cell, widening the labels to ints if it doesn't fit a char
+     * @param cell - The cell index (row * width + col)
+     * @param label - The label, NONE for blocks
+     */
+    private void setLabel(int cell, int label) {
+        if (_charLabels != null && label >= CHAR_NONE) {
+            int[] ints = new int[_charLabels.length];
+            for (int i = 0; i < ints.length; i++) {
+                ints[i] = _charLabels[i] == CHAR_NONE ? NONE : _charLabels[i];
+            }
+            _intLabels = ints;
+            _charLabels = null;
+        }
+
+        if (_charLabels != null) {
+            _charLabels[cell] = label == NONE ? CHAR_NONE : (char) label;
+        } else {
+            _intLabels[cell] = label;
+        }
+    }
+
+    /**
+     * Add a component with no cells
+     * @return component
+     */
+    private int newComponent() {
+        if (_count == _parent.length) {
+            _parent = Arrays.copyOf(_parent, _count * 2);
+            _size = Arrays.copyOf(_size, _count * 2);
+        }
+        _parent[_count] = _count;
+        _size[_count] = 0;
+        return _count++;
+    }
+
+    /**
+     * Find the component a label was merged into. Paths aren't shortened here,
+     * so reading components never writes (union by size keeps them short)
+     * @param label
+     * @return component
+     */
+    private int find(int label) {
+        while (_parent[label] != label) {
+            label = _parent[label];
+        }
+        return label;
+    }
+
+    /**
+     * Merge the components of two labels, the smaller into the larger
+     * @param a
+     * @param b
+     * @return the merged component
+     */
+    private int union(int a, int b) {
+        a = find(a);
+        b = find(b);
+        if (a == b) {
+            return a;
+        }
+        if (_size[a] < _size[b]) {
+            int swap = a;
+            a = b;
+            b = swap;
+        }
+        _parent[b] = a;
+        _size[a] += _size[b];
+        return a;
+    }
+}
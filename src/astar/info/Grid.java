@@ -1,17 +1,61 @@
 package astar.info;
 
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
 /**
  * Representation of the Grid to use for the Astar algorithm
  * and to display with the GUI
  *
+ * Blocks are stored in a bitset (one bit per cell), each row padded to a
+ * whole number of 64 bit words so a row can be read a word at a time. Path
+ * markers are kept in a second bitset that is only allocated once a path is
+ * set, and the start and end nodes are just their coordinates. The NodeType
+ * returned by getValue() is a view built from those.
+ *
+ * The blocks can also be a read-only buffer mapped from a file (see
+ * GridFile.map()), in which case blocks can't be added or removed. A file
+ * read with GridFile.read() or mapped can also bring the neighbour masks and
+ * components with it, so they don't have to be built again.
+ *
+ * The search inner loop (and the GUI's renderer) uses the unchecked isBlocked(),
+ * isPath() and getNeighbourMask() accessors instead, which don't allocate or
+ * bounds-check.
+ *
+ * The connected components of the open cells are labelled on first use of
+ * getComponent() or isReachable() and kept up to date by setValue(), so a
+ * search can turn down a start and end with no path between them straight
+ * away (see ComponentIndex). They take two bytes per cell, so they can be
+ * turned off with setComponentIndexEnabled(), and aren't kept for very large
+ * grids (a message says so the first time that rules out labelling them).
+ *
+ * The neighbour masks and components are built under a lock and published
+ * through volatile fields, so threads searching the same grid can all
+ * trigger the first build.
+ *
  * @author Jonathan Reimels
  *
  */
 public class Grid {
+    // grids with more cells than this compute neighbour masks on every call instead of storing them
+    private static final long MAX_STORED_NEIGHBOUR_MASKS = 1L << 26;
+
+    // grids with more cells than this don't label components (128 MB of labels)
+    private static final long MAX_COMPONENT_CELLS = 1L << 26;
+
     private Coordinate _startCoord = null;
     private Coordinate _endCoord = null;
-    private NodeType[][] _gridPath;
-    private int _size = 20;
+    private LongBuffer _blocks;
+    private long[] _paths = null;
+    private volatile byte[] _neighbourMasks = null;
+    private volatile ComponentIndex _components = null;
+    private boolean _componentIndexEnabled = true;
+    private boolean _componentIndexReported = false; // too large for components, and said so
+    private int _width = 20;
+    private int _height = 20;
+    private int _wordsPerRow;
+    private ArrayList<GridListener> _listeners = new ArrayList<GridListener>();
 
     /**
      * Types of nodes within grid
@@ -31,23 +75,80 @@ public class Grid {
      */
     public static final int MOVE_DIAGONAL = 3;
 
+    /**
+     * Row offset of the neighbour for each bit of a neighbour mask
+     */
+    public static final int[] NEIGHBOUR_ROW_OFFSETS = {0, 0, -1, -1, -1, 1, 1, 1};
+
+    /**
+     * Column offset of the neighbour for each bit of a neighbour mask
+     */
+    public static final int[] NEIGHBOUR_COL_OFFSETS = {-1, 1, 0, -1, 1, 0, -1, 1};
+
    /**
     * Constructor - Set the size of the grid (grids are square, the
     * size of a single side)
     * @param size
     */
     public Grid(int size) {
-        _size = size;
-        _gridPath = new NodeType[_size][_size];
-        clear();
+        this(size, size);
+    }
+
+    /**
+     * Constructor - Set the dimensions of a rectangular grid
+     * @param width - The number of columns
+     * @param height - The number of rows
+     */
+    public Grid(int width, int height) {
+        this(width, height, LongBuffer.wrap(new long[height * wordsPerRow(width)]));
     }
 
     /**
-     * Get the size of the grid (grids are square, the size of a single side)
+     * Constructor - Create a grid over existing block words (eg. mapped from a file)
+     * @param width - The number of columns
+     * @param height - The number of rows
+     * @param blocks - height * wordsPerRow(width) words of block bits, rows padded to whole
+     *        words, kept as they are
+     */
+    Grid(int width, int height, LongBuffer blocks) {
+        _width = width;
+        _height = height;
+        _wordsPerRow = wordsPerRow(width);
+        _blocks = blocks;
+    }
+
+    /**
+     * Get the number of 64 bit words needed for a row of blocks
+     * @param width - The width of the grid
+     * @return words per row
+     */
+    public static int wordsPerRow(int width) {
+        return (width + 63) >>> 6;
+    }
+
+    /**
+     * Get the size of the grid (grids created with Grid(size) are square, the size
+     * of a single side). For rectangular grids this is the width
      * @return size
      */
     public int getSize() {
-        return _size;
+        return _width;
+    }
+
+    /**
+     * Get the width of the grid
+     * @return number of columns
+     */
+    public int getWidth() {
+        return _width;
+    }
+
+    /**
+     * Get the height of the grid
+     * @return number of rows
+     */
+    public int getHeight() {
+        return _height;
     }
 
     /**
@@ -66,6 +167,226 @@ public class Grid {
         return _endCoord;
     }
 
+    /**
+     * Add a listener to notify when blocks change
+     * @param listener
+     */
+    public void addListener(GridListener listener) {
+        _listeners.add(listener);
+    }
+
+    /**
+     * Remove a listener added with addListener()
+     * @param listener
+     */
+    public void removeListener(GridListener listener) {
+        _listeners.remove(listener);
+    }
+
+    /**
+     * Check if blocks can be added to or removed from the grid
+     * @return true if the blocks are read-only
+     */
+    public boolean isReadOnly() {
+        return _blocks.isReadOnly();
+    }
+
+    /**
+     * Get the number of 64 bit words used for each row of blocks
+     * @return words per row
+     */
+    public int getWordsPerRow() {
+        return _wordsPerRow;
+    }
+
+    /**
+     * Get 64 cells of a row of blocks at once, bit n is set if column
+     * (word * 64 + n) is a block. Bits past the width of the grid are never set
+     * @param row - The row to read
+     * @param word - The word within the row, 0 to getWordsPerRow() - 1
+     * @return block bits
+     */
+    public long getBlockWord(int row, int word) {
+        return _blocks.get(row * _wordsPerRow + word);
+    }
+
+    /**
+     * Check if a cell is a block, without bounds checking
+     * @param row - The row, must be within the grid
+     * @param col - The column, must be within the grid
+     * @return true if the cell is a block
+     */
+    public boolean isBlocked(int row, int col) {
+        return (_blocks.get(wordIndex(row, col)) & (1L << col)) != 0;
+    }
+
+    /**
+     * Check if a cell is a block, without bounds checking
+     * @param cell - The cell index (row * width + col), must be within the grid
+     * @return true if the cell is a block
+     */
+    public boolean isBlocked(int cell) {
+        return isBlocked(cell / _width, cell % _width);
+    }
+
+    /**
+     * Check if a cell is part of the path, without bounds checking
+     * @param row - The row, must be within the grid
+     * @param col - The column, must be within the grid
+     * @return true if the cell is part of the path
+     */
+    public boolean isPath(int row, int col) {
+        return _paths != null && (_paths[wordIndex(row, col)] & (1L << col)) != 0;
+    }
+
+    /**
+     * Get the neighbours of a cell that can be moved to (within the grid and not
+     * a block), without bounds checking. Bit n of the mask is set if the cell at
+     * (row + NEIGHBOUR_ROW_OFFSETS[n], col + NEIGHBOUR_COL_OFFSETS[n]) can be moved to.
+     * The masks for all cells are computed on the first call and kept up to date
+     * by setValue() afterwards (except on very large grids, where they are
+     * computed from the blocks on every call)
+     * @param row - The row, must be within the grid
+     * @param col - The column, must be within the grid
+     * @return neighbour mask
+     */
+    public int getNeighbourMask(int row, int col) {
+        byte[] masks = _neighbourMasks;
+        if (masks == null) {
+            if ((long) _width * _height > MAX_STORED_NEIGHBOUR_MASKS) {
+                return computeNeighbourMask(row, col) & 0xFF;
+            }
+            masks = buildNeighbourMasks();
+        }
+        return masks[row * _width + col] & 0xFF;
+    }
+
+    /**
+     * Get the connected component of a cell, without bounds checking. Two open
+     * cells are in the same component if and only if there is a path between
+     * them. The components are labelled on the first call and kept up to date
+     * by setValue() afterwards (unless isComponentIndexEnabled() is false, when
+     * they aren't kept at all)
+     * @param row - The row, must be within the grid
+     * @param col - The column, must be within the grid
+     * @return component, -1 for blocks and if the components aren't kept
+     */
+    public int getComponent(int row, int col) {
+        ComponentIndex components = getComponentIndex();
+        return components == null ? -1 : components.getComponent(row, col);
+    }
+
+    /**
+     * Set whether to label the connected components of the grid. Turning them
+     * off frees the labels (two bytes per cell), and isReachable() then can't rule
+     * out any path, so searches with no path expand every cell they can reach
+     * @param enabled
+     */
+    public void setComponentIndexEnabled(boolean enabled) {
+        _componentIndexEnabled = enabled;
+        if (!enabled) {
+            _components = null;
+        }
+    }
+
+    /**
+     * Check if the connected components are labelled, ie. they are enabled and
+     * the grid has at most 2^26 cells
+     * @return true if getComponent() and isReachable() use them
+     */
+    public boolean isComponentIndexEnabled() {
+        return _componentIndexEnabled && (long) _width * _height <= MAX_COMPONENT_CELLS;
+    }
+
+    /**
+     * Get the neighbour mask of every cell, building them first if needed
+     * @return mask of each cell (row * width + col), null on very large grids
+     */
+    byte[] getNeighbourMasks() {
+        byte[] masks = _neighbourMasks;
+        if (masks == null && (long) _width * _height <= MAX_STORED_NEIGHBOUR_MASKS) {
+            masks = buildNeighbourMasks();
+        }
+        return masks;
+    }
+
+    /**
+     * Use neighbour masks saved from a grid with the same blocks instead of building them.
+     * They aren't checked against the blocks here (GridFile checks the section's checksum)
+     * @param masks - The mask of each cell, as returned by getNeighbourMasks()
+     */
+    void setNeighbourMasks(byte[] masks) {
+        _neighbourMasks = masks;
+    }
+
+    /**
+     * Use components saved from a grid with the same blocks instead of labelling
+     * the grid (not checked here either). Ignored if isComponentIndexEnabled() is false
+     * @param labels - The component of each cell (row * width + col), as returned by getComponent()
+     */
+    void setComponentLabels(int[] labels) {
+        if (isComponentIndexEnabled()) {
+            _components = new ComponentIndex(this, labels);
+        }
+    }
+
+    /**
+     * Get the component index, creating it on first use
+     * @return index, null if isComponentIndexEnabled() is false
+     */
+    private ComponentIndex getComponentIndex() {
+        ComponentIndex components = _components;
+        if (components == null && _componentIndexEnabled && !isComponentIndexEnabled() && !_componentIndexReported) {
+            _componentIndexReported = true;
+            System.out.println("Grid of " + _width + "x" + _height + " has too many cells to label its components,"
+                    + " searches with no path will expand every cell they can reach");
+        }
+        if (components == null && isComponentIndexEnabled()) {
+            synchronized (this) {
+                components = _components;
+                if (components == null) {
+                    components = new ComponentIndex(this);
+                    _components = components;
+                }
+            }
+        }
+        return components;
+    }
+
+    /**
+     * Check if there could be a path from one coordinate to another. A block
+     * can be moved off but not onto, so a start on a block can reach whatever
+     * its open neighbours can
+     * @param start - The coordinate to start from, must be within the grid
+     * @param end - The coordinate to reach, must be within the grid
+     * @return false if there is certainly no path, true otherwise
+     */
+    public boolean isReachable(Coordinate start, Coordinate end) {
+        if (start.isEqual(end)) {
+            return true;
+        }
+        if (isBlocked(end.getRow(), end.getCol())) {
+            return false;
+        }
+
+        int component = getComponent(end.getRow(), end.getCol());
+        if (component < 0) {
+            return true;
+        }
+        if (!isBlocked(start.getRow(), start.getCol())) {
+            return getComponent(start.getRow(), start.getCol()) == component;
+        }
+
+        int mask = getNeighbourMask(start.getRow(), start.getCol());
+        for (int i = 0; i < NEIGHBOUR_ROW_OFFSETS.length; i++) {
+            if ((mask & (1 << i)) != 0
+                    && getComponent(start.getRow() + NEIGHBOUR_ROW_OFFSETS[i], start.getCol() + NEIGHBOUR_COL_OFFSETS[i]) == component) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Get the value of a coordinate
      * @param coord - The coordinate to get
@@ -74,11 +395,27 @@ public class Grid {
      */
     public NodeType getValue(Coordinate coord) throws Exception {
         // check that coordinate is within the grid
-        if (coord.getRow() < 0 || coord.getRow() >= _size || coord.getCol() < 0 || coord.getCol() >= _size)
+        if (coord.getRow() < 0 || coord.getRow() >= _height || coord.getCol() < 0 || coord.getCol() >= _width)
             throw new Exception("Invalid row or col number");
 
-        // return the value at the coordinate
-        return _gridPath[coord.getRow()][coord.getCol()];
+        // start and end nodes take precedence over the bitsets
+        if (_startCoord != null && _startCoord.isEqual(coord)) {
+            return NodeType.START;
+        }
+        if (_endCoord != null && _endCoord.isEqual(coord)) {
+            return NodeType.END;
+        }
+
+        // return the value stored in the bitsets
+        int word = wordIndex(coord.getRow(), coord.getCol());
+        long bit = 1L << coord.getCol();
+        if ((_blocks.get(word) & bit) != 0) {
+            return NodeType.BLOCK;
+        }
+        if (_paths != null && (_paths[word] & bit) != 0) {
+            return NodeType.PATH;
+        }
+        return NodeType.EMPTY;
     }
 
     /**
@@ -91,61 +428,189 @@ public class Grid {
         NodeType currentValue = NodeType.EMPTY;
 
         // check that coordinate is within the grid
-        if (coord.getRow() < 0 || coord.getRow() >= _size || coord.getCol() < 0 || coord.getCol() >= _size)
+        if (coord.getRow() < 0 || coord.getRow() >= _height || coord.getCol() < 0 || coord.getCol() >= _width)
             throw new Exception("Invalid row or col number");
 
-        // if start node, remove any previous start nodes and set the start node coordinate
-        if (value == NodeType.START) {
-            if (_startCoord != null) {
-                _gridPath[_startCoord.getRow()][_startCoord.getCol()] = NodeType.EMPTY;
-            }
-            _startCoord = coord.clone();
-        }
-
-        // if end node, remove any previous end nodes and set the end node coordinate
-        if (value == NodeType.END) {
-            if (_endCoord != null) {
-                _gridPath[_endCoord.getRow()][_endCoord.getCol()] = NodeType.EMPTY;
-            }
-            _endCoord = coord.clone();
-        }
-
         // check if node being set was the start node or end node
         currentValue = getValue(coord);
+        if (_blocks.isReadOnly() && (currentValue == NodeType.BLOCK) != (value == NodeType.BLOCK))
+            throw new Exception("Blocks of a read-only grid can't be changed");
         if (currentValue == NodeType.START) {
             _startCoord = null;
         } else if (currentValue == NodeType.END) {
             _endCoord = null;
         }
 
-        // set value at coordinate
-        _gridPath[coord.getRow()][coord.getCol()] = value;
+        // clear any block or path at the coordinate
+        int word = wordIndex(coord.getRow(), coord.getCol());
+        long bit = 1L << coord.getCol();
+        if (currentValue == NodeType.BLOCK) {
+            _blocks.put(word, _blocks.get(word) & ~bit);
+        }
+        if (_paths != null) {
+            _paths[word] &= ~bit;
+        }
+
+        // set value at coordinate, setting the start or end node replaces
+        //   any previous start or end node
+        switch (value) {
+            case START:
+                _startCoord = coord.clone();
+                break;
+            case END:
+                _endCoord = coord.clone();
+                break;
+            case BLOCK:
+                _blocks.put(word, _blocks.get(word) | bit);
+                break;
+            case PATH:
+                if (_paths == null) {
+                    _paths = new long[wordCount()];
+                }
+                _paths[word] |= bit;
+                break;
+            case EMPTY:
+                break;
+        }
+
+        // only blocks affect the neighbour masks and listeners
+        if ((currentValue == NodeType.BLOCK) != (value == NodeType.BLOCK)) {
+            byte[] masks = _neighbourMasks;
+            if (masks != null) {
+                updateNeighbourMasks(masks, coord.getRow(), coord.getCol());
+            }
+            ComponentIndex components = _components;
+            if (components != null) {
+                if (value == NodeType.BLOCK) {
+                    components.blockAdded(coord.getRow(), coord.getCol());
+                } else {
+                    components.blockRemoved(coord.getRow(), coord.getCol());
+                }
+            }
+            for (int i = 0; i < _listeners.size(); i++) {
+                _listeners.get(i).blockChanged(coord.getRow(), coord.getCol(), value == NodeType.BLOCK);
+            }
+        }
     }
 
     /**
-     * Clear all values in grid
+     * Clear all values in grid (the blocks of a read-only grid are kept)
      */
     public void clear() {
         _startCoord = null;
         _endCoord = null;
 
-        for (int i = 0; i < _size; i++) {
-            for (int j = 0; j < _size; j++) {
-                _gridPath[i][j] = NodeType.EMPTY;
+        if (!_blocks.isReadOnly()) {
+            for (int i = 0; i < _blocks.limit(); i++) {
+                _blocks.put(i, 0L);
             }
         }
+        _paths = null;
+        _neighbourMasks = null;
+        ComponentIndex components = _components;
+        if (components != null) {
+            components.invalidate();
+        }
+
+        for (int i = 0; i < _listeners.size(); i++) {
+            _listeners.get(i).gridCleared();
+        }
+    }
+
+    /**
+     * Copy the blocks and the start and end nodes into a new grid, eg. to search
+     * on another thread while this grid is still being edited. Paths and
+     * listeners aren't copied, and the copy's blocks can always be changed
+     * @return copy of the grid
+     */
+    public Grid copy() {
+        Grid copy = new Grid(_width, _height);
+        for (int i = 0; i < _blocks.limit(); i++) {
+            copy._blocks.put(i, _blocks.get(i));
+        }
+        copy._startCoord = _startCoord == null ? null : _startCoord.clone();
+        copy._endCoord = _endCoord == null ? null : _endCoord.clone();
+        return copy;
     }
 
     /**
      * Clear the currently set path
      */
     public void clearPath() {
-        for (int i = 0; i < _size; i++) {
-            for (int j = 0; j < _size; j++) {
-                if (_gridPath[i][j] == NodeType.PATH) {
-                    _gridPath[i][j] = NodeType.EMPTY;
-                }
+        if (_paths != null) {
+            Arrays.fill(_paths, 0L);
+        }
+    }
+
+    /**
+     * Compute the neighbour mask of every cell, unless another thread did while
+     * this one waited for the lock
+     * @return masks
+     */
+    private synchronized byte[] buildNeighbourMasks() {
+        if (_neighbourMasks != null) {
+            return _neighbourMasks;
+        }
+
+        // fill the masks in before publishing them
+        byte[] masks = new byte[_width * _height];
+        for (int row = 0; row < _height; row++) {
+            for (int col = 0; col < _width; col++) {
+                masks[row * _width + col] = computeNeighbourMask(row, col);
+            }
+        }
+        _neighbourMasks = masks;
+        return masks;
+    }
+
+    /**
+     * Recompute the neighbour masks of a cell and the cells around it
+     * @param masks - The masks to update
+     * @param row
+     * @param col
+     */
+    private void updateNeighbourMasks(byte[] masks, int row, int col) {
+        for (int r = Math.max(row - 1, 0); r <= Math.min(row + 1, _height - 1); r++) {
+            for (int c = Math.max(col - 1, 0); c <= Math.min(col + 1, _width - 1); c++) {
+                masks[r * _width + c] = computeNeighbourMask(r, c);
+            }
+        }
+    }
+
+    /**
+     * Compute the neighbour mask of a cell from the blocks
+     * @param row
+     * @param col
+     * @return neighbour mask
+     */
+    private byte computeNeighbourMask(int row, int col) {
+        int mask = 0;
+        for (int i = 0; i < NEIGHBOUR_ROW_OFFSETS.length; i++) {
+            int r = row + NEIGHBOUR_ROW_OFFSETS[i];
+            int c = col + NEIGHBOUR_COL_OFFSETS[i];
+            if (r >= 0 && r < _height && c >= 0 && c < _width && !isBlocked(r, c)) {
+                mask |= 1 << i;
             }
         }
+        return (byte) mask;
+    }
+
+    /**
+     * Get the number of words in a bitset for the grid
+     * @return word count
+     */
+    private int wordCount() {
+        return _height * _wordsPerRow;
+    }
+
+    /**
+     * Get the index of the word holding a cell in a bitset (the bit within
+     * the word is the low 6 bits of the column)
+     * @param row
+     * @param col
+     * @return word index
+     */
+    private int wordIndex(int row, int col) {
+        return row * _wordsPerRow + (col >>> 6);
     }
 }
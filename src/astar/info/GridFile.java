@@ -0,0 +1,492 @@
+package astar.info;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Binary file format for Grids, laid out so the blocks can be memory mapped
+ * and searched without being copied onto the heap, or read onto the heap in
+ * one sequential pass. All values are little endian.
+ *
+ *   int magic, int version, int width, int height,
+ *   int start row, int start col, int end row, int end col (-1 if not set),
+ *   height * Grid.wordsPerRow(width) longs of block bits, one row after another,
+ *   (since version 2) any number of sections:
+ *     int type, int checksum, long length, length bytes padded to a multiple of 8
+ *
+ * The 32 byte header keeps the block words (and the sections) 8 byte aligned.
+ * The sections hold indexes the grid would otherwise build on first use:
+ * SECTION_NEIGHBOUR_MASKS a byte per cell, SECTION_COMPONENTS an int per
+ * cell. Readers skip sections of types they don't know. Version 1 files have
+ * no sections and can still be read.
+ *
+ * The checksum of a section is the CRC-32 of the CRC-32 of the block words
+ * (as 4 bytes) followed by the section's contents. An index only holds for
+ * the blocks it was built from, so a section whose checksum doesn't match is
+ * ignored and the index is built from the blocks again on first use.
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public class GridFile {
+    /**
+     * First int of every grid file ("AGRD")
+     */
+    public static final int MAGIC = 0x44524741;
+
+    /**
+     * Version of the format written by this class
+     */
+    public static final int VERSION = 2;
+
+    /**
+     * Section type of the neighbour masks (see Grid.getNeighbourMask())
+     */
+    public static final int SECTION_NEIGHBOUR_MASKS = 1;
+
+    /**
+     * Section type of the connected components (see Grid.getComponent())
+     */
+    public static final int SECTION_COMPONENTS = 2;
+
+    /**
+     * Size of the header in bytes
+     */
+    public static final int HEADER_SIZE = 32;
+
+    // size of the header of a section
+    private static final int SECTION_HEADER_SIZE = 16;
+
+    // number of words read or written per buffer
+    private static final int BUFFER_WORDS = 8192;
+
+    /**
+     * Don't instantiate
+     */
+    private GridFile() {}
+
+    /**
+     * Write a grid to a file without its indexes (paths are not written)
+     * @param grid - The grid to write
+     * @param file - The file to write to, replaced if it exists
+     * @throws IOException
+     */
+    public static void write(Grid grid, File file) throws IOException {
+        write(grid, file, false);
+    }
+
+    /**
+     * Write a grid to a file (paths are not written)
+     * @param grid - The grid to write
+     * @param file - The file to write to, replaced if it exists
+     * @param indexes - true to also write the neighbour masks and components (building
+     *        them first if needed), so reading the file doesn't have to build them
+     * @throws IOException
+     */
+    public static void write(Grid grid, File file, boolean indexes) throws IOException {
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = out.getChannel();
+            channel.truncate(0);
+
+            // write the header
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(grid.getWidth()).putInt(grid.getHeight());
+            putCoordinate(header, grid.getStart());
+            putCoordinate(header, grid.getEnd());
+            header.flip();
+            writeFully(channel, header);
+
+            // write the block words a buffer at a time, checksumming them for the sections
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_WORDS * 8).order(ByteOrder.LITTLE_ENDIAN);
+            CRC32 blocksChecksum = new CRC32();
+            for (int row = 0; row < grid.getHeight(); row++) {
+                for (int word = 0; word < grid.getWordsPerRow(); word++) {
+                    if (!buffer.hasRemaining()) {
+                        flush(channel, buffer, blocksChecksum);
+                    }
+                    buffer.putLong(grid.getBlockWord(row, word));
+                }
+            }
+            flush(channel, buffer, blocksChecksum);
+            int blocks = (int) blocksChecksum.getValue();
+
+            // very large grids have no stored indexes to write
+            byte[] masks = indexes ? grid.getNeighbourMasks() : null;
+            if (masks != null) {
+                CRC32 checksum = sectionChecksum(blocks);
+                checksum.update(masks);
+                writeSectionHeader(channel, SECTION_NEIGHBOUR_MASKS, (int) checksum.getValue(), masks.length);
+                writeFully(channel, ByteBuffer.wrap(masks));
+                writeFully(channel, ByteBuffer.allocate(padding(masks.length)));
+            }
+
+            // the components are written a buffer at a time rather than copied out whole, so
+            //   the header is filled in once their checksum is known
+            if (indexes && grid.isComponentIndexEnabled()) {
+                long length = (long) grid.getWidth() * grid.getHeight() * 4;
+                long headerPosition = channel.position();
+                channel.position(headerPosition + SECTION_HEADER_SIZE);
+                CRC32 checksum = sectionChecksum(blocks);
+                for (int row = 0; row < grid.getHeight(); row++) {
+                    for (int col = 0; col < grid.getWidth(); col++) {
+                        if (!buffer.hasRemaining()) {
+                            flush(channel, buffer, checksum);
+                        }
+                        buffer.putInt(grid.getComponent(row, col));
+                    }
+                }
+                flush(channel, buffer, checksum);
+                writeFully(channel, ByteBuffer.allocate(padding(length)));
+
+                long end = channel.position();
+                channel.position(headerPosition);
+                writeSectionHeader(channel, SECTION_COMPONENTS, (int) checksum.getValue(), length);
+                channel.position(end);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Read a grid file onto the heap in one sequential pass, along with any
+     * indexes saved in it. Unlike a mapped grid, the blocks of the returned grid
+     * can be changed
+     * @param file - The file to read
+     * @return grid
+     * @throws IOException if the file isn't a valid grid file
+     */
+    public static Grid read(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = in.getChannel();
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Not a grid file: " + file);
+            }
+
+            // read the header
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 0);
+            int width = checkHeader(header, channel.size(), file);
+            int height = header.getInt(12);
+
+            // the block words are read a buffer at a time straight into the grid's words
+            long[] words = new long[height * Grid.wordsPerRow(width)];
+            int blocks = readBlocks(channel, words.length, words);
+
+            Grid grid = new Grid(width, height, LongBuffer.wrap(words));
+            setCoordinate(grid, header, 16, Grid.NodeType.START);
+            setCoordinate(grid, header, 24, Grid.NodeType.END);
+
+            readSections(grid, channel, HEADER_SIZE + (long) words.length * 8, blocks, file);
+            return grid;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Map a grid file into memory read-only. The blocks stay in the file (and the
+     * OS page cache, shared with other processes mapping the same file), so the
+     * heap used by the grid doesn't depend on its size. Astar searches of grids
+     * too large to keep state for every cell only keep it for the cells they reach.
+     * Blocks of the returned grid can't be changed, the start, end and path can
+     * @param file - The file to map
+     * @return grid backed by the file
+     * @throws IOException if the file isn't a valid grid file
+     */
+    public static Grid map(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = in.getChannel();
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Not a grid file: " + file);
+            }
+
+            // read the header
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 0);
+            int width = checkHeader(header, channel.size(), file);
+            int height = header.getInt(12);
+
+            // map the block words, the mapping stays valid after the channel is closed
+            long blockBytes = (long) height * Grid.wordsPerRow(width) * 8;
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, blockBytes);
+            LongBuffer blocks = mapped.order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+
+            Grid grid = new Grid(width, height, blocks);
+            setCoordinate(grid, header, 16, Grid.NodeType.START);
+            setCoordinate(grid, header, 24, Grid.NodeType.END);
+
+            // the indexes are read onto the heap, checked against the blocks they were built from
+            long sectionsStart = HEADER_SIZE + blockBytes;
+            if (channel.size() > sectionsStart) {
+                int checksum = readBlocks(channel, (int) (blockBytes / 8), null);
+                readSections(grid, channel, sectionsStart, checksum, file);
+            }
+            return grid;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Validate a header against the size of the file it was read from
+     * @param header - The header, little endian
+     * @param fileSize - The size of the file in bytes
+     * @param file - The file, for error messages
+     * @return width of the grid
+     * @throws IOException if the header is invalid
+     */
+    static int checkHeader(ByteBuffer header, long fileSize, File file) throws IOException {
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException("Not a grid file: " + file);
+        }
+        if (header.getInt(4) < 1 || header.getInt(4) > VERSION) {
+            throw new IOException("Unsupported grid file version " + header.getInt(4) + ": " + file);
+        }
+
+        int width = header.getInt(8);
+        int height = header.getInt(12);
+        long blockBytes = (long) height * Grid.wordsPerRow(width) * 8;
+        if (width <= 0 || height <= 0 || blockBytes > Integer.MAX_VALUE) {
+            throw new IOException("Invalid grid dimensions " + width + "x" + height + ": " + file);
+        }
+        if (fileSize < HEADER_SIZE + blockBytes) {
+            throw new IOException("Truncated grid file: " + file);
+        }
+        return width;
+    }
+
+    /**
+     * Write the header of a section, to be followed by its contents and padding(length) bytes
+     * @param channel
+     * @param type - The section type
+     * @param checksum - The checksum of the section (see sectionChecksum())
+     * @param length - The length of the contents in bytes
+     * @throws IOException
+     */
+    private static void writeSectionHeader(FileChannel channel, int type, int checksum, long length)
+            throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(SECTION_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(type).putInt(checksum).putLong(length);
+        header.flip();
+        writeFully(channel, header);
+    }
+
+    /**
+     * Start the checksum of a section, to be updated with its contents
+     * @param blocks - The checksum of the block words
+     * @return checksum
+     */
+    private static CRC32 sectionChecksum(int blocks) {
+        CRC32 checksum = new CRC32();
+        for (int shift = 0; shift < 32; shift += 8) {
+            checksum.update(blocks >>> shift);
+        }
+        return checksum;
+    }
+
+    /**
+     * Read the block words following the header a buffer at a time, checksumming them
+     * @param channel
+     * @param count - The number of block words
+     * @param words - The array to read them into, null to only checksum them
+     * @return checksum of the block words
+     * @throws IOException
+     */
+    private static int readBlocks(FileChannel channel, int count, long[] words) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_WORDS * 8).order(ByteOrder.LITTLE_ENDIAN);
+        CRC32 checksum = new CRC32();
+        for (int first = 0; first < count; first += BUFFER_WORDS) {
+            int length = Math.min(BUFFER_WORDS, count - first);
+            buffer.clear();
+            buffer.limit(length * 8);
+            readFully(channel, buffer, HEADER_SIZE + (long) first * 8);
+            checksum.update(buffer.array(), 0, length * 8);
+            if (words != null) {
+                buffer.flip();
+                buffer.asLongBuffer().get(words, first, length);
+            }
+        }
+        return (int) checksum.getValue();
+    }
+
+    /**
+     * Read the sections from a position of a file to its end into a grid, ignoring
+     * any whose checksum shows they weren't built from the grid's blocks
+     * @param grid - The grid the sections were written for
+     * @param channel
+     * @param position - The position of the first section
+     * @param blocks - The checksum of the grid's block words
+     * @param file - The file, for error messages
+     * @throws IOException if a section is invalid
+     */
+    private static void readSections(Grid grid, FileChannel channel, long position, int blocks, File file)
+            throws IOException {
+        int cells = grid.getWidth() * grid.getHeight();
+        ByteBuffer header = ByteBuffer.allocate(SECTION_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        while (channel.size() - position >= SECTION_HEADER_SIZE) {
+            header.clear();
+            readFully(channel, header, position);
+            int type = header.getInt(0);
+            int checksum = header.getInt(4);
+            long length = header.getLong(8);
+            position += SECTION_HEADER_SIZE;
+            if (length < 0 || length + padding(length) > channel.size() - position) {
+                throw new IOException("Truncated section in grid file: " + file);
+            }
+
+            if (type == SECTION_NEIGHBOUR_MASKS) {
+                if (length != cells) {
+                    throw new IOException("Invalid neighbour mask section in grid file: " + file);
+                }
+                byte[] masks = new byte[cells];
+                readFully(channel, ByteBuffer.wrap(masks), position);
+                CRC32 expected = sectionChecksum(blocks);
+                expected.update(masks);
+                if ((int) expected.getValue() == checksum) {
+                    grid.setNeighbourMasks(masks);
+                }
+            } else if (type == SECTION_COMPONENTS && grid.isComponentIndexEnabled()) {
+                if (length != (long) cells * 4) {
+                    throw new IOException("Invalid component section in grid file: " + file);
+                }
+                int[] labels = readLabels(channel, position, cells, blocks, checksum);
+                if (labels != null) {
+                    for (int label : labels) {
+                        if (label < -1 || label >= cells) {
+                            throw new IOException("Invalid component section in grid file: " + file);
+                        }
+                    }
+                    grid.setComponentLabels(labels);
+                }
+            }
+
+            // sections of unknown types are skipped, as are components the grid doesn't keep
+            position += length + padding(length);
+        }
+    }
+
+    /**
+     * Read the contents of a component section a buffer at a time
+     * @param channel
+     * @param position - The position of the contents
+     * @param cells - The number of cells of the grid
+     * @param blocks - The checksum of the grid's block words
+     * @param checksum - The checksum of the section
+     * @return component of each cell, null if the checksum doesn't match
+     * @throws IOException
+     */
+    private static int[] readLabels(FileChannel channel, long position, int cells, int blocks, int checksum)
+            throws IOException {
+        int[] labels = new int[cells];
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_WORDS * 8).order(ByteOrder.LITTLE_ENDIAN);
+        CRC32 expected = sectionChecksum(blocks);
+        int perBuffer = buffer.capacity() / 4;
+        for (int first = 0; first < cells; first += perBuffer) {
+            int length = Math.min(perBuffer, cells - first);
+            buffer.clear();
+            buffer.limit(length * 4);
+            readFully(channel, buffer, position + (long) first * 4);
+            expected.update(buffer.array(), 0, length * 4);
+            buffer.flip();
+            buffer.asIntBuffer().get(labels, first, length);
+        }
+        return (int) expected.getValue() == checksum ? labels : null;
+    }
+
+    /**
+     * Get the number of bytes that pad a section to a multiple of 8 bytes
+     * @param length - The length of the section
+     * @return padding
+     */
+    private static int padding(long length) {
+        return (int) (-length & 7);
+    }
+
+    /**
+     * Put a coordinate into a buffer as a row and column, -1 if it is null
+     * @param buffer
+     * @param coord
+     */
+    private static void putCoordinate(ByteBuffer buffer, Coordinate coord) {
+        buffer.putInt(coord == null ? -1 : coord.getRow());
+        buffer.putInt(coord == null ? -1 : coord.getCol());
+    }
+
+    /**
+     * Set the start or end node of a grid from a row and column in a header
+     * @param grid
+     * @param header
+     * @param offset - The offset of the row in the header
+     * @param value - START or END
+     * @throws IOException if the coordinate isn't within the grid
+     */
+    private static void setCoordinate(Grid grid, ByteBuffer header, int offset, Grid.NodeType value)
+            throws IOException {
+        int row = header.getInt(offset);
+        int col = header.getInt(offset + 4);
+        if (row < 0) {
+            return;
+        }
+
+        try {
+            grid.setValue(new Coordinate(row, col), value);
+        } catch (Exception ex) {
+            throw new IOException("Invalid " + value + " node in grid file: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Fill the remaining bytes of a buffer from a channel
+     * @param channel
+     * @param buffer
+     * @param position - The position in the channel to read from
+     * @throws IOException if the channel ends first
+     */
+    static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of grid file");
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Write the bytes put into a buffer to a channel, adding them to a checksum, and
+     * clear the buffer
+     * @param channel
+     * @param buffer - A heap buffer
+     * @param checksum
+     * @throws IOException
+     */
+    private static void flush(FileChannel channel, ByteBuffer buffer, CRC32 checksum) throws IOException {
+        buffer.flip();
+        checksum.update(buffer.array(), 0, buffer.limit());
+        writeFully(channel, buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Write the remaining bytes of a buffer to a channel
+     * @param channel
+     * @param buffer
+     * @throws IOException
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
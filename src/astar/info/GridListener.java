@@ -0,0 +1,22 @@
+package astar.info;
+
+/**
+ * Listener notified when the blocks of a Grid change
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public interface GridListener {
+    /**
+     * Called after a block is added to or removed from a cell
+     * @param row - The row of the cell
+     * @param col - The column of the cell
+     * @param blocked - true if the cell is now a block
+     */
+    public void blockChanged(int row, int col, boolean blocked);
+
+    /**
+     * Called after every value in the grid has been cleared
+     */
+    public void gridCleared();
+}
@@ -0,0 +1,107 @@
+package astar.info;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.LongBuffer;
+
+/**
+ * Reader for the .map files of the MovingAI grid benchmark sets:
+ *
+ *   type octile
+ *   height 512
+ *   width 512
+ *   map
+ *   one line of width characters per row
+ *
+ * Ground ('.' and 'G') and swamp ('S') can be moved through, everything else
+ * (out of bounds '@' and 'O', trees 'T', water 'W') is a block. The rows are
+ * packed into block words as they're read, so the map is never held as text.
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public class MovingAiMap {
+    private static final String CHARSET = "US-ASCII";
+
+    /**
+     * Don't instantiate
+     */
+    private MovingAiMap() {}
+
+    /**
+     * Read a map file into a grid, with no start or end node
+     * @param file - The .map file
+     * @return grid
+     * @throws IOException if the file isn't a valid map
+     */
+    public static Grid read(File file) throws IOException {
+        Reader in = new InputStreamReader(new FileInputStream(file), CHARSET);
+        try {
+            return read(new BufferedReader(in), file.getName());
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Read a map into a grid, with no start or end node
+     * @param reader - The map text, positioned at the header
+     * @param name - The name of the map, for error messages
+     * @return grid
+     * @throws IOException if the text isn't a valid map
+     */
+    public static Grid read(BufferedReader reader, String name) throws IOException {
+        // the header lines can come in any order, up to the "map" line
+        int width = -1;
+        int height = -1;
+        String line;
+        while ((line = reader.readLine()) != null && !line.trim().equals("map")) {
+            String[] fields = line.trim().split("\\s+");
+            try {
+                if (fields[0].equals("width")) {
+                    width = Integer.parseInt(fields[1]);
+                } else if (fields[0].equals("height")) {
+                    height = Integer.parseInt(fields[1]);
+                }
+            } catch (RuntimeException ex) {
+                throw new IOException("Invalid header line \"" + line + "\": " + name);
+            }
+        }
+        if (line == null || width <= 0 || height <= 0) {
+            throw new IOException("Missing map header: " + name);
+        }
+        if ((long) height * Grid.wordsPerRow(width) > Integer.MAX_VALUE) {
+            throw new IOException("Invalid map dimensions " + width + "x" + height + ": " + name);
+        }
+
+        // pack each row into its block words as it's read
+        int wordsPerRow = Grid.wordsPerRow(width);
+        long[] words = new long[height * wordsPerRow];
+        for (int row = 0; row < height; row++) {
+            line = reader.readLine();
+            if (line == null || line.length() < width) {
+                throw new IOException("Truncated map at row " + row + ": " + name);
+            }
+            for (int col = 0; col < width; col++) {
+                if (!isPassable(line.charAt(col))) {
+                    words[row * wordsPerRow + (col >>> 6)] |= 1L << col;
+                }
+            }
+        }
+
+        return new Grid(width, height, LongBuffer.wrap(words));
+    }
+
+    /**
+     * Check if a map character can be moved through
+     * @param terrain
+     * @return true for ground and swamp
+     */
+    private static boolean isPassable(char terrain) {
+        return terrain == '.' || terrain == 'G' || terrain == 'S';
+    }
+}
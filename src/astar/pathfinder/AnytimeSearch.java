@@ -0,0 +1,429 @@
+package astar.pathfinder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import astar.info.Coordinate;
+import astar.info.Grid;
+
+/**
+ * Anytime search (ARA*) using the heuristic of an Astar implementation. The
+ * first path is found quickly with the heuristic inflated by a weight, then
+ * the weight is lowered step by step and the path improved, reusing the work
+ * of the previous searches, until the weight reaches 1 or the time budget runs
+ * out. The best path found so far is returned, with a bound on how much longer
+ * it can be than the shortest path (for admissible heuristics).
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public class AnytimeSearch {
+    /**
+     * Default weight of the heuristic for the first search
+     */
+    public static final double DEFAULT_INITIAL_WEIGHT = 3.0;
+
+    /**
+     * Default amount the weight is lowered by after each search
+     */
+    public static final double DEFAULT_WEIGHT_STEP = 0.5;
+
+    // expansions between checks of the deadline
+    private static final int DEADLINE_CHECK_INTERVAL = 1024;
+
+    private Astar _heuristic;
+    private double _initialWeight = DEFAULT_INITIAL_WEIGHT;
+    private double _weightStep = DEFAULT_WEIGHT_STEP;
+    private double _weight;
+    private SearchWorkspace _workspace = null;
+    private NodeStore _nodes;
+    private NodeHeap _openNodes;
+    private int[] _closedIteration;       // iteration a cell was last closed in
+    private boolean[] _inconsistent;      // true if the cell is in _inconsistentCells
+    private int[] _inconsistentCells = new int[64];
+    private int _inconsistentCount = 0;
+    private int _iteration = 0;
+    private Coordinate _end;
+    private Coordinate _coord = new Coordinate(); // reused for every heuristic call
+    private double _bound = Double.POSITIVE_INFINITY;
+    private int _distance = -1;
+    private int _stepCount = 0;
+    private int _iterations = 0;
+    private long _runtime = -1;
+
+    /**
+     * Constructor
+     * @param heuristic - The implementation whose heuristic (estimateDistance()) and grid are used
+     */
+    public AnytimeSearch(Astar heuristic) {
+        _heuristic = heuristic;
+    }
+
+    /**
+     * Set the weight of the heuristic for the first search
+     * @param weight - The weight, at least 1
+     */
+    public void setInitialWeight(double weight) {
+        _initialWeight = Math.max(weight, 1.0);
+    }
+
+    /**
+     * Set the amount the weight is lowered by after each search
+     * @param step - The step, more than 0
+     * @throws IllegalArgumentException if the step is 0 or less, the weight would never come down
+     */
+    public void setWeightStep(double step) {
+        if (!(step > 0)) {
+            throw new IllegalArgumentException("Weight step must be more than 0: " + step);
+        }
+        _weightStep = step;
+    }
+
+    /**
+     * Get the bound on the distance of the last path found, relative to the shortest path
+     * @return suboptimality bound (1 if the path is the shortest), infinite if there is no path
+     */
+    public double getSuboptimalityBound() {
+        return _bound;
+    }
+
+    /**
+     * Get the weight of the heuristic of the last search that completed
+     * @return weight
+     */
+    public double getWeight() {
+        return _weight;
+    }
+
+    /**
+     * Get the distance for the path
+     * @return distance, -1 if there is no path
+     */
+    public int getDistance() {
+        return _distance;
+    }
+
+    /**
+     * Get the number of nodes expanded over all searches
+     * @return step count
+     */
+    public int getStepCount() {
+        return _stepCount;
+    }
+
+    /**
+     * Get the number of searches that completed, each one lowering the weight
+     * @return iteration count
+     */
+    public int getIterations() {
+        return _iterations;
+    }
+
+    /**
+     * Get the time the last call to findPath() took
+     * @return time in ms, -1 if the algorithm hasn't been run yet
+     */
+    public long getRuntime() {
+        return _runtime;
+    }
+
+    /**
+     * Find a path between two coordinates, improving it until the time budget
+     * runs out. The first path is always searched for to the end, even if that
+     * takes longer than the budget
+     * @param start - The coordinate to start from
+     * @param end - The coordinate to find a path to
+     * @param budget - The time allowed
+     * @param unit - The unit of the time allowed
+     * @return list of coordinates (not including start or end), null if there is no path
+     * @throws Exception
+     */
+    public ArrayList<Coordinate> findPath(Coordinate start, Coordinate end, long budget, TimeUnit unit)
+            throws Exception {
+        long starttime = System.nanoTime();
+        long deadline = starttime + unit.toNanos(budget);
+        Grid grid = _heuristic._grid;
+
+        // grid should not be null
+        if (grid == null) {
+            System.out.println("AnytimeSearch.findPath called without grid being set first");
+            return null;
+        }
+
+        // check that the coordinates are within the grid
+        if (start == null || end == null)
+            throw new Exception("Start and end nodes must be set");
+        if (start.getRow() < 0 || start.getRow() >= grid.getHeight() || start.getCol() < 0
+                || start.getCol() >= grid.getWidth() || end.getRow() < 0 || end.getRow() >= grid.getHeight()
+                || end.getCol() < 0 || end.getCol() >= grid.getWidth())
+            throw new Exception("Invalid row or col number");
+
+        _heuristic.prepareHeuristic();
+        reInit(grid);
+        _end = end;
+        _weight = _initialWeight;
+
+        // an end outside the start's component can't be reached at any weight
+        if (!grid.isReachable(start, end)) {
+            _runtime = (System.nanoTime() - starttime) / 1000000;
+            return null;
+        }
+
+        // open the start cell
+        int startCell = _nodes.cell(start);
+        _nodes.setDistance(startCell, 0);
+        _nodes.setParent(startCell, NodeStore.NO_PARENT);
+        _nodes.setEstimatedDistance(startCell, weighted(0, start.getRow(), start.getCol()));
+        _nodes.setState(startCell, NodeStore.OPEN);
+        _openNodes.add(startCell);
+
+        // the first search always runs to the end
+        int endCell = _nodes.cell(end);
+        improvePath(grid, endCell, Long.MAX_VALUE);
+        if (_nodes.getState(endCell) == NodeStore.UNSEEN) {
+            _runtime = (System.nanoTime() - starttime) / 1000000;
+            return null;
+        }
+        ArrayList<Coordinate> path = rebuildPath(endCell);
+        _distance = _nodes.getDistance(endCell);
+        _bound = bound(endCell);
+        _iterations = 1;
+
+        // lower the weight and improve the path while there is time
+        while (_bound > 1.0 && System.nanoTime() < deadline) {
+            // a weight above the bound can't give a better path, so skip straight past it
+            double weight = _weight;
+            reopen(Math.max(1.0, Math.min(weight - _weightStep, _bound)));
+
+            // an unfinished search leaves the best path found so far
+            if (!improvePath(grid, endCell, deadline)) {
+                _weight = weight;
+                break;
+            }
+            _iterations++;
+            if (_nodes.getDistance(endCell) < _distance) {
+                path = rebuildPath(endCell);
+                _distance = _nodes.getDistance(endCell);
+            }
+            _bound = Math.min(_bound, bound(endCell));
+        }
+
+        _runtime = (System.nanoTime() - starttime) / 1000000;
+        return path;
+    }
+
+    /**
+     * Re-Initialize internal state of algorithm for a search on a grid
+     * @param grid
+     */
+    private void reInit(Grid grid) {
+        // keep the workspace between searches, it only needs replacing when the grid size changes
+        if (_workspace == null || !_workspace.fits(grid.getWidth(), grid.getHeight())) {
+            _workspace = new SearchWorkspace(grid.getWidth(), grid.getHeight());
+            _closedIteration = new int[grid.getWidth() * grid.getHeight()];
+            _inconsistent = new boolean[grid.getWidth() * grid.getHeight()];
+            _iteration = 0;
+        } else {
+            _workspace.reset();
+        }
+        _nodes = _workspace.getNodes();
+        _openNodes = _workspace.getOpenNodes();
+
+        // a search that ran out of time can leave cells marked inconsistent
+        for (int i = 0; i < _inconsistentCount; i++) {
+            _inconsistent[_inconsistentCells[i]] = false;
+        }
+        _inconsistentCount = 0;
+        nextIteration();
+
+        _bound = Double.POSITIVE_INFINITY;
+        _distance = -1;
+        _stepCount = 0;
+        _iterations = 0;
+    }
+
+    /**
+     * Expand cells until no open cell could lead to a shorter path to the end
+     * (with the current weight)
+     * @param grid
+     * @param endCell
+     * @param deadline - System.nanoTime() to stop at
+     * @return false if the deadline was reached first
+     */
+    private boolean improvePath(Grid grid, int endCell, long deadline) {
+        int expansions = 0;
+        while (!_openNodes.isEmpty() && (_nodes.getState(endCell) == NodeStore.UNSEEN
+                || _nodes.getDistance(endCell) > _nodes.getEstimatedDistance(_openNodes.peek()))) {
+            if (++expansions % DEADLINE_CHECK_INTERVAL == 0 && System.nanoTime() > deadline) {
+                return false;
+            }
+
+            int cell = _openNodes.poll();
+            _nodes.setState(cell, NodeStore.CLOSED);
+            _closedIteration[cell] = _iteration;
+            _stepCount++;
+
+            int row = _nodes.row(cell);
+            int col = _nodes.col(cell);
+            int mask = grid.getNeighbourMask(row, col);
+            for (int i = 0; i < Grid.NEIGHBOUR_ROW_OFFSETS.length; i++) {
+                if ((mask & (1 << i)) == 0) {
+                    continue;
+                }
+                int rowOffset = Grid.NEIGHBOUR_ROW_OFFSETS[i];
+                int colOffset = Grid.NEIGHBOUR_COL_OFFSETS[i];
+                int distance = _nodes.getDistance(cell)
+                        + (rowOffset == 0 || colOffset == 0 ? Grid.MOVE_LATERAL : Grid.MOVE_DIAGONAL);
+                updateCell(row + rowOffset, col + colOffset, distance, cell);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Lower the distance of a cell if it was reached by a shorter path
+     * @param row
+     * @param col
+     * @param distance - The distance through the parent
+     * @param parent - The cell being expanded
+     */
+    private void updateCell(int row, int col, int distance, int parent) {
+        int cell = _nodes.cell(row, col);
+        byte state = _nodes.getState(cell);
+        if (state != NodeStore.UNSEEN && _nodes.getDistance(cell) <= distance) {
+            return;
+        }
+
+        _nodes.setDistance(cell, distance);
+        _nodes.setParent(cell, parent);
+
+        // cells closed by this search are only opened again by the next search
+        if (state == NodeStore.CLOSED && _closedIteration[cell] == _iteration) {
+            if (!_inconsistent[cell]) {
+                _inconsistent[cell] = true;
+                if (_inconsistentCount == _inconsistentCells.length) {
+                    _inconsistentCells = Arrays.copyOf(_inconsistentCells, _inconsistentCount * 2);
+                }
+                _inconsistentCells[_inconsistentCount++] = cell;
+            }
+            return;
+        }
+
+        _nodes.setEstimatedDistance(cell, weighted(distance, row, col));
+        if (state == NodeStore.OPEN) {
+            _openNodes.decreaseKey(cell);
+        } else {
+            _nodes.setState(cell, NodeStore.OPEN);
+            _openNodes.add(cell);
+        }
+    }
+
+    /**
+     * Start the next search with a lower weight: open the inconsistent cells
+     * again and re-sort the open cells by their new estimated distances
+     * @param weight - The new weight
+     */
+    private void reopen(double weight) {
+        _weight = weight;
+        for (int i = 0; i < _inconsistentCount; i++) {
+            int cell = _inconsistentCells[i];
+            _inconsistent[cell] = false;
+            _nodes.setState(cell, NodeStore.OPEN);
+            _openNodes.add(cell);
+        }
+        _inconsistentCount = 0;
+
+        for (int i = 0; i < _openNodes.size(); i++) {
+            int cell = _openNodes.get(i);
+            _nodes.setEstimatedDistance(cell, weighted(_nodes.getDistance(cell), _nodes.row(cell), _nodes.col(cell)));
+        }
+        _openNodes.rebuild();
+        nextIteration();
+    }
+
+    /**
+     * Start a new iteration, so no cell counts as closed by the current search
+     */
+    private void nextIteration() {
+        _iteration++;
+
+        // once the iteration wraps around old values could match again, so clear them
+        if (_iteration == Integer.MAX_VALUE) {
+            Arrays.fill(_closedIteration, 0);
+            _iteration = 1;
+        }
+    }
+
+    /**
+     * Get the bound on the distance of the path to the end relative to the
+     * shortest path: no path can be shorter than the smallest unweighted
+     * estimated distance of the open and inconsistent cells
+     * @param endCell
+     * @return suboptimality bound
+     */
+    private double bound(int endCell) {
+        long smallest = Long.MAX_VALUE;
+        for (int i = 0; i < _openNodes.size(); i++) {
+            smallest = Math.min(smallest, unweighted(_openNodes.get(i)));
+        }
+        for (int i = 0; i < _inconsistentCount; i++) {
+            smallest = Math.min(smallest, unweighted(_inconsistentCells[i]));
+        }
+
+        // nothing smaller is left when the open cells are used up (or the start is the end)
+        if (smallest == Long.MAX_VALUE || smallest == 0) {
+            return 1.0;
+        }
+        double bound = (double) _nodes.getDistance(endCell) / smallest;
+        return Math.max(1.0, Math.min(_weight, bound));
+    }
+
+    /**
+     * Get the distance of a cell plus its unweighted heuristic
+     * @param cell
+     * @return estimated distance
+     */
+    private long unweighted(int cell) {
+        _coord.setRow(_nodes.row(cell));
+        _coord.setCol(_nodes.col(cell));
+        return (long) _nodes.getDistance(cell) + _heuristic.estimateDistance(_coord, _end);
+    }
+
+    /**
+     * Get the distance of a cell plus its weighted heuristic
+     * @param distance
+     * @param row
+     * @param col
+     * @return estimated distance
+     */
+    private int weighted(int distance, int row, int col) {
+        _coord.setRow(row);
+        _coord.setCol(col);
+        return distance + (int) (_weight * _heuristic.estimateDistance(_coord, _end));
+    }
+
+    /**
+     * Build list of coordinates from the end cell through all it's parents
+     * @param endCell
+     * @return list of coordinates (not including the start or end node)
+     */
+    private ArrayList<Coordinate> rebuildPath(int endCell) {
+        ArrayList<Coordinate> list = new ArrayList<Coordinate>();
+        int cell = _nodes.getParent(endCell);
+        while (cell != NodeStore.NO_PARENT && _nodes.getParent(cell) != NodeStore.NO_PARENT) {
+            list.add(new Coordinate(_nodes.row(cell), _nodes.col(cell)));
+            cell = _nodes.getParent(cell);
+        }
+
+        // the list was built from child to root
+        Collections.reverse(list);
+        return list;
+    }
+
+    @Override
+    public String toString() {
+        return "Anytime " + _heuristic;
+    }
+}
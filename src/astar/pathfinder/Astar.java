@@ -1,7 +1,11 @@
 package astar.pathfinder;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
 
 import astar.info.Coordinate;
 import astar.info.Grid;
@@ -12,16 +16,52 @@ import astar.info.Node;
  * the estimateDistance() function for this algorithm to work. This way the
  * algorithm can be run with various heuristics.
  *
+ * In bidirectional mode a second search runs backwards from the end node, the
+ * two searches taking turns, and the same heuristic estimates the distance to
+ * whichever node the search is heading for (see getTarget()).
+ *
  * @author Jonathan Reimels
  *
  */
 public abstract class Astar {
-    private ArrayList<Node> _closedNodes = new ArrayList<Node>();
-    private ArrayList<Node> _openNodes = new ArrayList<Node>();
-    private Node _currentNode = null;
+    /**
+     * Number of expansions between calls to the SearchMonitor
+     */
+    public static final int MONITOR_INTERVAL = 64;
+
+    // collector registered on the classpath (eg. by the astar-jfr jar), used by every new instance
+    private static final StatisticsCollector DEFAULT_COLLECTOR = loadDefaultCollector();
+
+    private SearchWorkspace _workspace = null;
+    private SearchWorkspace _backwardWorkspace = null;
+    private NodeStore _nodes = null;
+    private OpenList _openNodes = null;
+    private OpenList.Type _openListType = OpenList.Type.HEAP;
+    private NodeStore _otherNodes = null; // state of the opposite direction of a bidirectional search
+    private DistanceHistogram _openDistances = null; // only tracked by bidirectional searches
+    private int _currentCell = NodeStore.NO_PARENT;
+    private Coordinate _start = null;
+    private Coordinate _end = null;
+    private Coordinate _target = null;
+    private boolean _bidirectional = false;
+    private int _meetingCell = NodeStore.NO_PARENT; // forward search cell id
+    private int _meetingDistance = Integer.MAX_VALUE;
+    private Coordinate _adjacentCoord = new Coordinate(); // reused for every heuristic call
     private long _runtime = -1;
     private int _distance = -1;
     private int _stepCount = 0;
+    private int _expandedCount = 0;
+    private int _generatedCount = 0;
+    private int _decreaseKeyCount = 0;
+    private int _openPeak = 0;
+    private long _heapOperationCount = 0;
+    private int _heuristicCount = 0;
+    private long _searchNanos = -1;
+    private int _pathLength = -1;
+    private SearchStatistics _statistics = null; // built from the fields above when first asked for
+    private StatisticsCollector _collector = DEFAULT_COLLECTOR;
+    private Object _collectedSearch = null; // returned by the collector for the running search
+    private SearchMonitor _monitor = null;
 
     protected Grid _grid = null;
 
@@ -31,13 +71,108 @@ public abstract class Astar {
     public Astar() {}
 
     /**
-     * Set the Grid to use
+     * Set the Grid to use. Blocks can be memory mapped (see GridFile.map()); the
+     * search state of grids too large to hold for every cell is kept sparse, for
+     * only the cells a search reaches (see SearchWorkspace.needsSparse())
      * @param grid
      */
     public void setGrid(Grid grid) {
         _grid = grid;
     }
 
+    /**
+     * Set whether to search from both the start and end node at once. Ignored
+     * (searches run from the start only) if the implementation doesn't support it
+     * @param bidirectional
+     */
+    public void setBidirectional(boolean bidirectional) {
+        _bidirectional = bidirectional && supportsBidirectional();
+    }
+
+    /**
+     * Check if searches run from both the start and end node at once
+     * @return true if bidirectional
+     */
+    public boolean isBidirectional() {
+        return _bidirectional;
+    }
+
+    /**
+     * Check if the implementation can search from both the start and end node at once.
+     * The two searches are only sure to meet if each opens every cell it passes
+     * through, so implementations whose successors skip cells should return false
+     * @return true if setBidirectional(true) is supported
+     */
+    public boolean supportsBidirectional() {
+        return true;
+    }
+
+    /**
+     * Set the implementation of the open nodes. The default binary heap handles any
+     * heuristic, buckets are faster when estimated distances only grow a little at a
+     * time (see BucketQueue)
+     * @param type
+     */
+    public void setOpenListType(OpenList.Type type) {
+        _openListType = type;
+    }
+
+    /**
+     * Get the implementation of the open nodes
+     * @return open list type
+     */
+    public OpenList.Type getOpenListType() {
+        return _openListType;
+    }
+
+    /**
+     * Set the workspace to use for searches, eg one taken from a SearchWorkspacePool.
+     * If it doesn't match the size of the Grid, a new workspace will be allocated
+     * @param workspace
+     */
+    public void setWorkspace(SearchWorkspace workspace) {
+        _workspace = workspace;
+    }
+
+    /**
+     * Get the workspace used by the last search (the forward search, if bidirectional)
+     * @return workspace, null if the algorithm hasn't been run yet
+     */
+    public SearchWorkspace getWorkspace() {
+        return _workspace;
+    }
+
+    /**
+     * Set the collector to pass the statistics of every search to. By default the first
+     * StatisticsCollector service found on the classpath is used, or a NoOpStatisticsCollector
+     * @param collector
+     */
+    public void setStatisticsCollector(StatisticsCollector collector) {
+        _collector = collector;
+    }
+
+    /**
+     * Set the monitor to call while searches run, eg. to cancel them from another thread
+     * @param monitor - The monitor, null for none
+     */
+    public void setSearchMonitor(SearchMonitor monitor) {
+        _monitor = monitor;
+    }
+
+    /**
+     * Get the statistics of the last search, including nanosecond timing and
+     * counters beyond the step count
+     * @return statistics, null if the algorithm hasn't been run yet or a search is running
+     */
+    public SearchStatistics getStatistics() {
+        if (_statistics == null && _searchNanos >= 0) {
+            _statistics = new SearchStatistics(toString(), _bidirectional, _grid.getWidth(), _grid.getHeight(),
+                    _start.clone(), _end.clone(), _searchNanos, _distance, _pathLength, _expandedCount,
+                    _generatedCount, _decreaseKeyCount, _openPeak, _heapOperationCount, _heuristicCount);
+        }
+        return _statistics;
+    }
+
     /**
      * Get the time the algorithm took to find the shortest path
      * @return time in ms, -1 if the algorithm hasn't been run yet
@@ -55,7 +190,8 @@ public abstract class Astar {
     }
 
     /**
-     * Get the number of steps the algorithm took to find the shortest path
+     * Get the number of steps the algorithm took to find the shortest path (the
+     * number of nodes expanded, in both directions if bidirectional)
      * @return step count
      */
     public int getStepCount() {
@@ -63,15 +199,50 @@ public abstract class Astar {
     }
 
     /**
-     * Re-Initialize internal state of algorithm
+     * Re-Initialize internal state of algorithm for a search between the start and end
+     * of the search being run
      */
     public void reInit() {
-        _closedNodes = new ArrayList<Node>();
-        _openNodes = new ArrayList<Node>();
-        _currentNode = new Node(_grid.getStart());
+        // keep the workspace between searches, it only needs replacing when the grid size
+        //   changes (or it is dense and the grid needs a sparse one)
+        int width = _grid.getWidth();
+        int height = _grid.getHeight();
+        boolean sparse = SearchWorkspace.needsSparse(width, height, _openListType, _bidirectional ? 2 : 1);
+        if (_workspace == null || !_workspace.fits(width, height) || (sparse && !_workspace.isSparse())) {
+            _workspace = new SearchWorkspace(width, height, sparse);
+        } else {
+            _workspace.reset();
+        }
+        _nodes = _workspace.getNodes();
+        _openNodes = _workspace.getOpenNodes(_openListType);
+        _otherNodes = null;
+        _openDistances = null;
+        _currentCell = _nodes.cell(_start);
+        _target = _end;
+
+        // a bidirectional search keeps a second workspace for the backward search
+        if (_bidirectional) {
+            if (_backwardWorkspace == null || !_backwardWorkspace.fits(width, height)
+                    || (sparse && !_backwardWorkspace.isSparse())) {
+                _backwardWorkspace = new SearchWorkspace(width, height, sparse);
+            } else {
+                _backwardWorkspace.reset();
+            }
+        }
+        _meetingCell = NodeStore.NO_PARENT;
+        _meetingDistance = Integer.MAX_VALUE;
         _runtime = -1;
+        _searchNanos = -1;
+        _pathLength = -1;
+        _statistics = null;
         _distance = -1;
         _stepCount = 0;
+        _expandedCount = 0;
+        _generatedCount = 0;
+        _decreaseKeyCount = 0;
+        _openPeak = 0;
+        _heapOperationCount = 0;
+        _heuristicCount = 0;
     }
 
     /**
@@ -80,236 +251,513 @@ public abstract class Astar {
      * @throws Exception
      */
     public ArrayList<Coordinate> findPath() throws Exception {
+        // grid should not be null
+        if (_grid == null) {
+            System.out.println("Astar.findPath called without grid being set first");
+            return null;
+        }
+
+        return findPath(_grid.getStart(), _grid.getEnd());
+    }
+
+    /**
+     * Find the shortest path between two coordinates of the set Grid, ignoring the
+     * Grid's own start and end nodes. The Grid isn't modified, so several Astar
+     * instances can search the same Grid at once as long as nothing changes it
+     * @param start - The coordinate to start from
+     * @param end - The coordinate to find a path to
+     * @return list of coordinates for shortest path in order (not including start or end)
+     * @throws SearchCancelledException if the SearchMonitor cancels the search
+     * @throws Exception
+     */
+    public ArrayList<Coordinate> findPath(Coordinate start, Coordinate end) throws Exception {
         long starttime = System.currentTimeMillis();
+        long startnanos = System.nanoTime();
         ArrayList<Coordinate> path;
 
-        // re-initialize state
-        reInit();
-
         // grid should not be null
         if (_grid == null) {
             System.out.println("Astar.findPath called without grid being set first");
             return null;
         }
 
-        // find the last node in the tree of nodes for the shortest path
-        Node small = generateNodePaths();
+        // check that the coordinates are within the grid
+        if (start == null || end == null)
+            throw new Exception("Start and end nodes must be set");
+        if (!isWithinGrid(start) || !isWithinGrid(end))
+            throw new Exception("Invalid row or col number");
+
+        // re-initialize state
+        _collectedSearch = _collector.searchStarted();
+        _start = start;
+        _end = end;
+        reInit();
+
+        // no search can reach an end outside the start's component, so don't
+        //   expand every cell it can reach to find that out
+        if (!_grid.isReachable(start, end)) {
+            collectStatistics(System.nanoTime() - startnanos, null);
+            return null;
+        }
+
+        // find the last cell in the tree of cells for the shortest path (or the
+        //   cell where the two trees meet, if bidirectional)
+        int small = _bidirectional ? generateBidirectionalNodePaths() : generateNodePaths();
 
-        // if small is null, then no possible path exists
-        if (small == null) {
+        // if small isn't set, then no possible path exists
+        if (small == NodeStore.NO_PARENT) {
+            collectStatistics(System.nanoTime() - startnanos, null);
             return null;
         }
 
         // set distance
-        _distance = small.getDistance();
+        _distance = _bidirectional ? _meetingDistance : _nodes.getDistance(small);
 
-        // build the shortest path from the node
+        // build the shortest path from the cell
         path = rebuildPath(small);
-        path.remove(path.size() - 1); // remove the end node from the list
 
         // set the runtime
         _runtime = System.currentTimeMillis() - starttime;
+        collectStatistics(System.nanoTime() - startnanos, path);
 
         return path;
     }
 
     /**
-     * Build list of coordinates from a node through all it's parents starting with root node
-     * @param node
-     * @return list of coordinates
+     * Record the statistics of the search just run and pass them to the collector
+     * @param nanos - The wall time of the search
+     * @param path - The path found, null if there is none
      */
-    private ArrayList<Coordinate> rebuildPath(Node node) {
-        ArrayList<Coordinate> list;
-
-        // if we've reached the root node, return an empty ArrayList
-        if (node.getParent() == null) {
-            return new ArrayList<Coordinate>();
+    private void collectStatistics(long nanos, ArrayList<Coordinate> path) {
+        _searchNanos = nanos;
+        _pathLength = path == null ? -1 : path.size();
+
+        // only build them for collectors that want them, otherwise when getStatistics() is called
+        if (_collectedSearch != null) {
+            _collector.collect(getStatistics(), _collectedSearch);
+            _collectedSearch = null;
         }
+    }
 
-        // recurse to get through the list of nodes from root to child and add them to the list
-        list = rebuildPath(node.getParent());
-        list.add(node.getCoord());
-        return list;
+    /**
+     * Build the Node tree for a coordinate reached by the last search (the forward
+     * search, if bidirectional), following its parents back to the start node
+     * @param coord
+     * @return node for the coordinate, null if the last search didn't reach it
+     */
+    public Node getNode(Coordinate coord) {
+        int cell = _nodes == null ? -1 : _nodes.find(coord.getRow(), coord.getCol());
+        if (cell == -1 || _nodes.getState(cell) == NodeStore.UNSEEN) {
+            return null;
+        }
+        return _nodes.buildNode(cell);
     }
 
     /**
-     * Find the node which has a tree of parent nodes that create the shortest path
-     * @return the child most node of the shortest path
-     * @throws Exception
+     * Copy the open and closed cells of the current (or last) search, in both
+     * directions if bidirectional. This visits every cell of the grid (every
+     * cell reached, if the workspace is sparse), so a SearchMonitor should only
+     * take one every so often
+     * @return snapshot, null if the algorithm hasn't been run yet or the grid has
+     *         too many cells to number by int
      */
-    private Node generateNodePaths() throws Exception {
-        // while a path to the end node hasn't been found, update the list of open nodes
-        while (!_currentNode.getCoord().isEqual(_grid.getEnd())) {
-            // update all nodes
-            updateNodes();
+    public SearchSnapshot getSnapshot() {
+        if (_workspace == null || (long) _grid.getWidth() * _grid.getHeight() > Integer.MAX_VALUE) {
+            return null;
+        }
 
-            // set the current node to closed
-            _closedNodes.add(_currentNode);
-            _openNodes.remove(_currentNode);
+        BitSet open = new BitSet();
+        BitSet closed = new BitSet();
+        addStates(_workspace.getNodes(), open, closed);
+        if (_bidirectional && _backwardWorkspace != null) {
+            addStates(_backwardWorkspace.getNodes(), open, closed);
+        }
+        return new SearchSnapshot(_workspace.getNodes().getWidth(), _stepCount, open, closed);
+    }
 
-            if (_openNodes.isEmpty()) {
-                return null;
+    /**
+     * Set the bits of the open and closed cells of a node store
+     * @param nodes
+     * @param open
+     * @param closed
+     */
+    private static void addStates(NodeStore nodes, BitSet open, BitSet closed) {
+        for (int cell = 0; cell < nodes.getCellCount(); cell++) {
+            // the bits are row * width + col, which is only the cell id of a dense store
+            byte state = nodes.getState(cell);
+            if (state == NodeStore.OPEN) {
+                open.set(nodes.row(cell) * nodes.getWidth() + nodes.col(cell));
+            } else if (state == NodeStore.CLOSED) {
+                closed.set(nodes.row(cell) * nodes.getWidth() + nodes.col(cell));
             }
-
-            // find the new smallest estimated node
-            _currentNode = findSmallestNode();
-
-            // increment number of steps taken
-            _stepCount++;
         }
-
-        return _currentNode;
     }
 
     /**
-     * Find the node in the _openNodes list with the smallest estimated distance
-     * @return smallest node
+     * Call the monitor, if there is one, every MONITOR_INTERVAL steps
+     * @throws SearchCancelledException if the monitor cancels the search
      */
-    private Node findSmallestNode() {
-        // compare everything to the first node
-        Node smallest = _openNodes.get(0);
+    private void checkMonitor() throws SearchCancelledException {
+        if (_monitor != null && _stepCount % MONITOR_INTERVAL == 0 && !_monitor.checkpoint(this)) {
+            throw new SearchCancelledException(_stepCount);
+        }
+    }
 
-        // iterate through the open nodes and find the one with the smallest estimated distance
-        Iterator<Node> nodeIter = _openNodes.iterator();
-        while (nodeIter.hasNext()) {
-            Node temp = nodeIter.next();
-            if (temp.getEstimatedDistance() < smallest.getEstimatedDistance()) {
-                smallest = temp;
+    /**
+     * Find the default collector, the first StatisticsCollector service on the classpath
+     * @return collector, a NoOpStatisticsCollector if there is none that can be loaded
+     */
+    private static StatisticsCollector loadDefaultCollector() {
+        Iterator<StatisticsCollector> services =
+            ServiceLoader.load(StatisticsCollector.class, Astar.class.getClassLoader()).iterator();
+        try {
+            if (services.hasNext()) {
+                return services.next();
             }
+        } catch (ServiceConfigurationError ex) {
+            // a broken service shouldn't stop searches from running
+        } catch (LinkageError ex) {
+            // eg. the JFR collector on a JVM without JFR
         }
-        return smallest;
+        return new NoOpStatisticsCollector();
     }
 
     /**
-     * Update the list of _openNodes with new nodes and distances
-     * @return  true if path leading to end node is found
-     * @throws Exception
+     * Check if a coordinate is within the grid
+     * @param coord
+     * @return true if the coordinate is within the grid
+     */
+    private boolean isWithinGrid(Coordinate coord) {
+        return coord.getRow() >= 0 && coord.getRow() < _grid.getHeight()
+                && coord.getCol() >= 0 && coord.getCol() < _grid.getWidth();
+    }
+
+    /**
+     * Build list of coordinates from a cell through all it's parents starting after the root cell
+     * (for a bidirectional search, through the cell where the searches met on to the end node)
+     * @param cell
+     * @return list of coordinates (not including the start or end node)
      */
-    private boolean updateNodes() throws Exception {
-        // get a list of empty nodes adjacent to the current node
-        ArrayList<Node> adjacent = generateAdjacentNodes();
+    private ArrayList<Coordinate> rebuildPath(int cell) {
+        NodeStore forward = _workspace.getNodes();
+        ArrayList<Coordinate> list = new ArrayList<Coordinate>();
+
+        // the list is built from the end back to the start, so start with the cells
+        //   between the meeting cell and the end, and the meeting cell itself
+        if (_bidirectional) {
+            NodeStore backward = _backwardWorkspace.getNodes();
+            int backwardCell = backward.find(forward.row(cell), forward.col(cell));
+            addParentPath(backward, backwardCell, list);
+            Collections.reverse(list);
+
+            if (forward.getParent(cell) != NodeStore.NO_PARENT && backward.getParent(backwardCell) != NodeStore.NO_PARENT) {
+                list.add(new Coordinate(forward.row(cell), forward.col(cell)));
+            }
+        }
 
-        // iterate through the adjacent nodes
-        Iterator<Node> adjIter = adjacent.iterator();
-        while (adjIter.hasNext()) {
-            Node node = adjIter.next();
-            boolean isNewNode = false;
+        // then the cells back to the start
+        addParentPath(forward, cell, list);
 
-            // assume diagonal, and update to lateral if needed
-            int distanceToNode = Grid.MOVE_DIAGONAL;
+        // the list was built from child to root
+        Collections.reverse(list);
+        return list;
+    }
 
-            // if the distance is 0, then the node is new as this is always set on existing nodes
-            if (node.getDistance() == 0) {
-                isNewNode = true;
+    /**
+     * Add the cells from a cell through all it's parents to a list, starting after
+     * the cell and stopping before the root cell
+     * @param nodes - The store holding the parents
+     * @param cell
+     * @param list - The list to add to
+     */
+    private void addParentPath(NodeStore nodes, int cell, ArrayList<Coordinate> list) {
+        int parent = nodes.getParent(cell);
+        while (parent != NodeStore.NO_PARENT) {
+            int row = nodes.row(cell);
+            int col = nodes.col(cell);
+            int parentRow = nodes.row(parent);
+            int parentCol = nodes.col(parent);
+
+            // a parent isn't always adjacent (eg. jump points), so add the cells on
+            //   the straight or diagonal line between the cell and its parent
+            int rowStep = Integer.signum(parentRow - row);
+            int colStep = Integer.signum(parentCol - col);
+            for (row += rowStep, col += colStep; row != parentRow || col != parentCol; row += rowStep, col += colStep) {
+                list.add(new Coordinate(row, col));
             }
 
-            // if the node has the same row or column as the current node, then
-            //   it's a lateral movement, otherwise it's diagonal(the default)
-            if (node.getCoord().getRow() == _currentNode.getCoord().getRow() ||
-                    node.getCoord().getCol() == _currentNode.getCoord().getCol()) {
-                distanceToNode = Grid.MOVE_LATERAL;
+            if (nodes.getParent(parent) != NodeStore.NO_PARENT) {
+                list.add(new Coordinate(parentRow, parentCol));
             }
 
-            // if the node is new, or it's distance would now be shorter
-            if (isNewNode || node.getDistance() > (_currentNode.getDistance() + distanceToNode)) {
+            cell = parent;
+            parent = nodes.getParent(cell);
+        }
+    }
+
+    /**
+     * Find the cell which has a tree of parent cells that create the shortest path
+     * @return the child most cell of the shortest path, NO_PARENT if there is no path
+     * @throws SearchCancelledException
+     */
+    private int generateNodePaths() throws SearchCancelledException {
+        int endCell = _nodes.cell(_end);
 
-                // set distance of node
-                node.setDistance(_currentNode.getDistance() + distanceToNode);
+        _nodes.setDistance(_currentCell, 0);
+        _nodes.setParent(_currentCell, NodeStore.NO_PARENT);
+        _nodes.setState(_currentCell, NodeStore.CLOSED);
 
-                // set the nodes estimated distance (call to the method that must be implemented
-                //   by the sub-class), and it's new parent
-                node.setEstimatedDistance(node.getDistance() + estimateDistance(node.getCoord()));
-                node.setParent(_currentNode);
+        // while a path to the end cell hasn't been found, update the list of open cells
+        while (_currentCell != endCell) {
+            // update all cells
+            updateNodes();
+            _expandedCount++;
 
-                // add the node to the open nodes if it's new
-                if (isNewNode) {
-                    _openNodes.add(node);
-                }
+            if (_openNodes.isEmpty()) {
+                return NodeStore.NO_PARENT;
             }
+
+            // remove the new smallest estimated cell from the open cells and close it
+            _currentCell = _openNodes.poll();
+            _nodes.setState(_currentCell, NodeStore.CLOSED);
+            _heapOperationCount++;
+
+            // increment number of steps taken
+            _stepCount++;
+            checkMonitor();
         }
-        return false;
+
+        return _currentCell;
     }
 
     /**
-     * Find a node with given coordinate in an ArrayList
-     * @param coord
-     * @param nodes
-     * @return node with the coordinate
+     * Search forwards from the start node and backwards from the end node, always
+     * expanding the direction with fewer open cells, until no path can be shorter
+     * than the shortest one found through a cell both searches have reached
+     * @return the cell where the searches meet on the shortest path, NO_PARENT if there is no path
+     * @throws SearchCancelledException
      */
-    private Node findNode(Coordinate coord, ArrayList<Node> nodes) {
-        Node n;
-        Iterator<Node> nodeIter = nodes.iterator();
+    private int generateBidirectionalNodePaths() throws SearchCancelledException {
+        NodeStore forward = _workspace.getNodes();
+        OpenList forwardOpen = _workspace.getOpenNodes(_openListType);
+        NodeStore backward = _backwardWorkspace.getNodes();
+        OpenList backwardOpen = _backwardWorkspace.getOpenNodes(_openListType);
+        DistanceHistogram forwardDistances = _workspace.getOpenDistances();
+        DistanceHistogram backwardDistances = _backwardWorkspace.getOpenDistances();
+
+        // open the root of each search, the root of one search is the target of the other
+        selectDirection(false);
+        openRoot(_end);
+        selectDirection(true);
+        openRoot(_start);
+
+        while (true) {
+            int forwardSmallest = forwardOpen.isEmpty()
+                    ? Integer.MAX_VALUE : forward.getEstimatedDistance(forwardOpen.peek());
+            int backwardSmallest = backwardOpen.isEmpty()
+                    ? Integer.MAX_VALUE : backward.getEstimatedDistance(backwardOpen.peek());
+
+            // a path not found yet is at least as long as the smallest estimated distance of
+            //   either search, and has to cross from an open cell of one search to an open cell
+            //   of the other (this also stops once either search runs out of open cells)
+            long bound = Math.max(forwardSmallest, backwardSmallest);
+            bound = Math.max(bound, (long) forwardDistances.smallest() + backwardDistances.smallest());
+            if (_meetingDistance <= bound) {
+                break;
+            }
 
-        // iterate through nodes in the list
-        while (nodeIter.hasNext()) {
-            n = nodeIter.next();
+            // expand the direction with fewer open cells
+            selectDirection(backwardOpen.isEmpty() || (!forwardOpen.isEmpty() && forwardOpen.size() <= backwardOpen.size()));
 
-            // if a node is equal to the given coordinate, return it
-            if (coord.isEqual(n.getCoord())) {
-                return n;
-            }
+            // remove the smallest estimated cell from the open cells, close it and update it's neighbours
+            _currentCell = _openNodes.poll();
+            _nodes.setState(_currentCell, NodeStore.CLOSED);
+            _openDistances.remove(_nodes.getDistance(_currentCell));
+            updateNodes();
+            _heapOperationCount++;
+            _expandedCount++;
+
+            // increment number of steps taken
+            _stepCount++;
+            checkMonitor();
         }
 
-        // no equivalent nodes found
-        return null;
+        // leave the forward search selected for getNode()
+        selectDirection(true);
+        _otherNodes = null;
+        _openDistances = null;
+        return _meetingCell;
     }
 
     /**
-     * Generate a list of nodes that are adjacent to the current node not already closed
-     * @return list of adjacent nodes
-     * @throws Exception
+     * Make the forward or backward search of a bidirectional search the one being expanded
+     * @param forward - true for the search from the start node
+     */
+    private void selectDirection(boolean forward) {
+        SearchWorkspace current = forward ? _workspace : _backwardWorkspace;
+        SearchWorkspace other = forward ? _backwardWorkspace : _workspace;
+
+        _nodes = current.getNodes();
+        _openNodes = current.getOpenNodes(_openListType);
+        _otherNodes = other.getNodes();
+        _openDistances = current.getOpenDistances();
+        _target = forward ? _end : _start;
+    }
+
+    /**
+     * Open the root cell of the selected search
+     * @param coord - The coordinate of the root
      */
-    private ArrayList<Node> generateAdjacentNodes() throws Exception {
-        ArrayList<Node> adj = new ArrayList<Node>();
-        ArrayList<Integer> rows = new ArrayList<Integer>(); // list of adjacent rows
-        ArrayList<Integer> cols = new ArrayList<Integer>(); // list of adjacent columns
-        Node existingNode = null;
+    private void openRoot(Coordinate coord) {
+        _currentCell = NodeStore.NO_PARENT;
+        openNode(coord.getRow(), coord.getCol(), 0);
+    }
 
-        // add current row and col to lists
-        rows.add(_currentNode.getCoord().getRow());
-        cols.add(_currentNode.getCoord().getCol());
+    /**
+     * Update the open cells with the cells adjacent to the current cell and their new distances.
+     * Subclasses can override this to generate different successors, passing them to openNode()
+     */
+    protected void updateNodes() {
+        int row = _nodes.row(_currentCell);
+        int col = _nodes.col(_currentCell);
+        int distance = _nodes.getDistance(_currentCell);
+
+        // the mask only has bits for adjacent cells within the grid that aren't blocks
+        int mask = _grid.getNeighbourMask(row, col);
+
+        // loop through all adjacent cells in the mask
+        for (int i = 0; mask != 0; i++, mask >>>= 1) {
+            if ((mask & 1) == 0) {
+                continue;
+            }
 
-        // add rows and cols next to current row and col, if they exist
-        if (_currentNode.getCoord().getRow() > 0) {
-            rows.add(_currentNode.getCoord().getRow() - 1);
-        }
-        if (_currentNode.getCoord().getRow() < _grid.getSize() - 1) {
-            rows.add(_currentNode.getCoord().getRow() + 1);
-        }
-        if (_currentNode.getCoord().getCol() > 0) {
-            cols.add(_currentNode.getCoord().getCol() - 1);
+            int rowOffset = Grid.NEIGHBOUR_ROW_OFFSETS[i];
+            int colOffset = Grid.NEIGHBOUR_COL_OFFSETS[i];
+
+            // if the cell has the same row or column as the current cell, then
+            //   it's a lateral movement, otherwise it's diagonal
+            openNode(row + rowOffset, col + colOffset,
+                    distance + (rowOffset == 0 || colOffset == 0 ? Grid.MOVE_LATERAL : Grid.MOVE_DIAGONAL));
         }
-        if (_currentNode.getCoord().getCol() < _grid.getSize() - 1) {
-            cols.add(_currentNode.getCoord().getCol() + 1);
+    }
+
+    /**
+     * Open a cell reached from the current cell, or lower its distance if it is
+     * already open and the new distance is shorter. Closed cells are ignored
+     * @param row - The row of the cell
+     * @param col - The column of the cell
+     * @param distance - The distance to the cell through the current cell
+     */
+    protected void openNode(int row, int col, int distance) {
+        // check that the cell hasn't already been closed
+        _generatedCount++;
+        int cell = _nodes.cell(row, col);
+        byte state = _nodes.getState(cell);
+        if (state == NodeStore.CLOSED) {
+            return;
         }
 
-        // loop through all (row, col) combinations
-        for (int rowIndex = 0; rowIndex < rows.size(); rowIndex++) {
-            for (int colIndex = 0; colIndex < cols.size(); colIndex++) {
-                // generate the coordinate for the current position
-                Coordinate coord = new Coordinate(rows.get(rowIndex), cols.get(colIndex));
-
-                // check that the coordinate isn't the _currentNode, that it hasn't already
-                //   been closed, and that isn't a block
-                if (!_currentNode.getCoord().isEqual(coord)
-                        && findNode(coord, _closedNodes) == null
-                        && _grid.getValue(coord) != Grid.NodeType.BLOCK) {
-                    // if the coordinate is already open in the openNodes, then return that node,
-                    //   otherwise create a new node
-                    if ((existingNode = findNode(coord, _openNodes)) != null) {
-                        adj.add(existingNode);
-                    } else {
-                        adj.add(new Node(coord));
-                    }
+        // if the cell is new, or it's distance would now be shorter
+        if (state == NodeStore.UNSEEN || _nodes.getDistance(cell) > distance) {
+
+            // set distance of cell, it's estimated distance (call to the method that must
+            //   be implemented by the sub-class), and it's new parent
+            if (_openDistances != null) {
+                if (state == NodeStore.OPEN) {
+                    _openDistances.remove(_nodes.getDistance(cell));
+                }
+                _openDistances.add(distance);
+            }
+
+            _adjacentCoord.setRow(row);
+            _adjacentCoord.setCol(col);
+            _nodes.setDistance(cell, distance);
+            _nodes.setEstimatedDistance(cell, distance + estimateDistance(_adjacentCoord));
+            _nodes.setParent(cell, _currentCell);
+            _heuristicCount++;
+            _heapOperationCount++;
+
+            // add the cell to the open cells if it's new, otherwise move it
+            //   up the open cells to match its lowered estimated distance
+            if (state == NodeStore.UNSEEN) {
+                _nodes.setState(cell, NodeStore.OPEN);
+                _openNodes.add(cell);
+                _openPeak = Math.max(_openPeak, _openNodes.size());
+            } else {
+                _openNodes.decreaseKey(cell);
+                _decreaseKeyCount++;
+            }
+
+            // if the other direction of a bidirectional search has reached the cell, there
+            //   is a path through it (the stores only share cell ids if they are dense)
+            if (_otherNodes != null) {
+                int otherCell = _otherNodes.find(row, col);
+                if (otherCell != -1 && _otherNodes.getState(otherCell) != NodeStore.UNSEEN
+                        && distance + _otherNodes.getDistance(otherCell) < _meetingDistance) {
+                    _meetingDistance = distance + _otherNodes.getDistance(otherCell);
+
+                    // keep the id the forward search has for it
+                    _meetingCell = _nodes == _workspace.getNodes() ? cell : otherCell;
                 }
             }
         }
-        return adj;
     }
 
+    /**
+     * Get the cell currently being expanded
+     * @return current cell
+     */
+    protected int getCurrentCell() {
+        return _currentCell;
+    }
+
+    /**
+     * Get the per-cell state of the current search
+     * @return node store
+     */
+    protected NodeStore getNodes() {
+        return _nodes;
+    }
+
+    /**
+     * Get the coordinate the current search is heading for, the end of the search (or
+     * the start for the backward half of a bidirectional search)
+     * @return target coordinate
+     */
+    protected Coordinate getTarget() {
+        return _target;
+    }
+
+    /**
+     * Estimate the distance from a coordinate to a target with this implementation's
+     * heuristic, for engines that run their own search loop (eg. AnytimeSearch)
+     * @param coord
+     * @param target
+     * @return estimated distance
+     */
+    int estimateDistance(Coordinate coord, Coordinate target) {
+        _target = target;
+        return estimateDistance(coord);
+    }
+
+    /**
+     * Get the heuristic ready for estimateDistance() calls from another engine's
+     * search loop, eg. build any table it precomputes. Does nothing by default
+     * @throws Exception
+     */
+    void prepareHeuristic() throws Exception {}
+
+    /**
+     * Use what another instance of the same implementation precomputed for its
+     * heuristic instead of building it again, eg. so the workers of a
+     * ParallelSearch share one table. Does nothing by default
+     * @param prepared - The instance, already prepared with prepareHeuristic()
+     */
+    void shareHeuristic(Astar prepared) {}
+
     /**
      * Method to implement
-     * It should find an estimated from a coordinate to the end node in _grid
+     * It should find an estimated distance from a coordinate to the target (getTarget())
      * @param coord
      * @return estimated distance
      */
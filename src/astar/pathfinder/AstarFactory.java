@@ -12,7 +12,7 @@ public class AstarFactory {
      * Current implementations
      */
     public static enum Implementation {
-        ManhattanMethod, DiagonalMethod, EuclideanMethod, DijkstraMethod, MyMethod;
+        ManhattanMethod, DiagonalMethod, EuclideanMethod, DijkstraMethod, MyMethod, JumpPointMethod, LandmarkMethod;
     }
 
     /**
@@ -40,6 +40,10 @@ public class AstarFactory {
                 return new DijkstraMethod();
             case MyMethod:
             	return new MyMethod();
+            case JumpPointMethod:
+                return new JumpPointMethod();
+            case LandmarkMethod:
+                return new LandmarkMethod();
             default:
                 return null;
         }
@@ -0,0 +1,60 @@
+package astar.pathfinder;
+
+import java.util.List;
+
+/**
+ * The results of a batch of PathQuerys, in the order the queries were given
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public class BatchResult {
+    private List<PathResult> _results;
+    private long _nanos;
+
+    /**
+     * Constructor
+     * @param results - The result of each query
+     * @param nanos - The wall clock time the whole batch took in nanoseconds
+     */
+    public BatchResult(List<PathResult> results, long nanos) {
+        _results = results;
+        _nanos = nanos;
+    }
+
+    /**
+     * Get the result of each query
+     * @return results, in query order
+     */
+    public List<PathResult> getResults() {
+        return _results;
+    }
+
+    /**
+     * Get the wall clock time the whole batch took
+     * @return time in ns
+     */
+    public long getNanos() {
+        return _nanos;
+    }
+
+    /**
+     * Get the total number of nodes expanded by all queries
+     * @return step count
+     */
+    public long getStepCount() {
+        long steps = 0;
+        for (PathResult result : _results) {
+            steps += result.getStepCount();
+        }
+        return steps;
+    }
+
+    /**
+     * Get the number of queries answered per second of wall clock time
+     * @return queries per second
+     */
+    public double getThroughput() {
+        return _nanos == 0 ? 0 : _results.size() / (_nanos / 1e9);
+    }
+}
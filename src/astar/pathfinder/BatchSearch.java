@@ -0,0 +1,213 @@
+package astar.pathfinder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import astar.info.Coordinate;
+import astar.info.Grid;
+
+/**
+ * Answers batches of PathQuerys against one Grid in parallel. Each worker
+ * thread has its own Astar instance (and so its own search workspace, kept
+ * between batches) and takes the next unanswered query whenever it finishes
+ * one, so uneven queries still keep every thread busy. The Grid must not be
+ * changed while a batch is running.
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public class BatchSearch {
+    private Grid _grid;
+    private Astar[] _workers;
+    private ExecutorService _executor;
+
+    /**
+     * Constructor - use one worker per available processor
+     * @param grid - The grid to search
+     * @param impl - implementation (algorithm/heuristic) to search with
+     */
+    public BatchSearch(Grid grid, AstarFactory.Implementation impl) {
+        this(grid, impl, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor
+     * @param grid - The grid to search
+     * @param impl - implementation (algorithm/heuristic) to search with
+     * @param threads - The number of worker threads
+     */
+    public BatchSearch(Grid grid, AstarFactory.Implementation impl, int threads) {
+        _grid = grid;
+        _workers = new Astar[threads];
+        for (int i = 0; i < threads; i++) {
+            _workers[i] = AstarFactory.getAstar(impl);
+            _workers[i].setGrid(grid);
+        }
+
+        // daemon threads, so a forgotten shutdown() doesn't keep the JVM alive
+        _executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private AtomicInteger _count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "astar-batch-" + _count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Set whether the workers search from both ends of each query at once
+     * @param bidirectional
+     */
+    public synchronized void setBidirectional(boolean bidirectional) {
+        for (Astar worker : _workers) {
+            worker.setBidirectional(bidirectional);
+        }
+    }
+
+    /**
+     * Set the collector to pass the statistics of every search to, it must be
+     * thread safe since the workers search at the same time
+     * @param collector
+     */
+    public synchronized void setStatisticsCollector(StatisticsCollector collector) {
+        for (Astar worker : _workers) {
+            worker.setStatisticsCollector(collector);
+        }
+    }
+
+    /**
+     * Answer a batch of queries
+     * @param queries - The queries to answer
+     * @return the result of each query, in the same order, and the batch's throughput
+     * @throws Exception if any search fails
+     */
+    public synchronized BatchResult search(List<PathQuery> queries) throws Exception {
+        PathResult[] results = new PathResult[queries.size()];
+        AtomicInteger next = new AtomicInteger();
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+
+        // the grid builds its neighbour masks and components on first use, do that
+        //   once here rather than have every worker wait for the first one to
+        if (_grid.getWidth() > 0 && _grid.getHeight() > 0) {
+            _grid.getNeighbourMask(0, 0);
+            _grid.getComponent(0, 0);
+        }
+
+        // build any table the heuristic precomputes once, and share it between the workers
+        _workers[0].prepareHeuristic();
+        for (int i = 1; i < _workers.length; i++) {
+            _workers[i].shareHeuristic(_workers[0]);
+        }
+
+        long starttime = System.nanoTime();
+        for (Astar worker : _workers) {
+            futures.add(_executor.submit(new Worker(worker, queries, results, next)));
+        }
+
+        // wait for every worker, passing on the first failure
+        boolean finished = false;
+        try {
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+            finished = true;
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof Exception) {
+                throw (Exception) ex.getCause();
+            }
+            throw ex;
+        } finally {
+            // stop handing out queries, and let the other workers finish the ones they're
+            //   on, so no Astar is still searching when the next batch starts
+            if (!finished) {
+                next.set(queries.size());
+                awaitWorkers(futures);
+            }
+        }
+
+        return new BatchResult(Arrays.asList(results), System.nanoTime() - starttime);
+    }
+
+    /**
+     * Wait for every worker of a batch to finish, ignoring their failures
+     * @param futures - The workers of the batch
+     */
+    private static void awaitWorkers(List<Future<Void>> futures) {
+        boolean interrupted = false;
+        for (Future<Void> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (ExecutionException ex) {
+                    break;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        }
+
+        // keep the interrupt for the caller
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stop the worker threads, the BatchSearch can't be used afterwards
+     */
+    public void shutdown() {
+        _executor.shutdown();
+    }
+
+    /**
+     * Answers queries with one Astar instance until none are left
+     */
+    private static class Worker implements Callable<Void> {
+        private Astar _astar;
+        private List<PathQuery> _queries;
+        private PathResult[] _results;
+        private AtomicInteger _next;
+
+        /**
+         * Constructor
+         * @param astar - The Astar instance owned by the worker
+         * @param queries - The queries of the batch
+         * @param results - The results of the batch, filled in by query index
+         * @param next - The index of the next query to answer, shared by all workers
+         */
+        public Worker(Astar astar, List<PathQuery> queries, PathResult[] results, AtomicInteger next) {
+            _astar = astar;
+            _queries = queries;
+            _results = results;
+            _next = next;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            int index;
+            while ((index = _next.getAndIncrement()) < _queries.size()) {
+                PathQuery query = _queries.get(index);
+
+                long starttime = System.nanoTime();
+                ArrayList<Coordinate> path = _astar.findPath(query.getStart(), query.getEnd());
+                long nanos = System.nanoTime() - starttime;
+
+                _results[index] = new PathResult(query, path, path == null ? -1 : _astar.getDistance(),
+                        _astar.getStepCount(), nanos);
+            }
+            return null;
+        }
+    }
+}
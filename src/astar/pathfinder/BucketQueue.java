@@ -0,0 +1,202 @@
+package astar.pathfinder;
+
+import java.util.Arrays;
+
+/**
+ * Open nodes kept in a circular array of buckets, one bucket per estimated
+ * distance. Move costs and heuristics are small integers, so the estimated
+ * distances of the open cells only span a narrow range at any time, and the
+ * array just has to be larger than that range: bucket (distance & mask) can
+ * then only hold cells of a single distance. Adding, lowering and removing a
+ * cell are O(1), and finding the smallest cell only scans forward from the
+ * last one removed.
+ *
+ * The cells of a bucket are a doubly linked list held in arrays indexed by
+ * cell, removed in the order they were added. Cells added later tend to be
+ * further from the start, so ties are broken much like NodeHeap breaks them
+ * (smaller distance first), though not always in exactly the same order.
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public class BucketQueue implements OpenList {
+    private static final int DEFAULT_BUCKETS = 64; // must be a power of two
+    private static final int NONE = -1;
+
+    private NodeStore _nodes;
+    private int[] _heads;      // first cell of each bucket
+    private int[] _tails;      // last cell of each bucket
+    private int[] _next;       // next cell in the same bucket
+    private int[] _previous;   // previous cell in the same bucket
+    private int[] _key;        // estimated distance the cell was filed under
+    private int _mask;
+    private int _size = 0;
+    private int _lowest;       // no cell has a smaller estimated distance
+    private int _highest;      // no cell has a larger estimated distance
+
+    /**
+     * Constructor
+     * @param nodes - The store holding the estimated distances of the cells
+     */
+    public BucketQueue(NodeStore nodes) {
+        _nodes = nodes;
+        _heads = new int[DEFAULT_BUCKETS];
+        _tails = new int[DEFAULT_BUCKETS];
+        Arrays.fill(_heads, NONE);
+        _mask = DEFAULT_BUCKETS - 1;
+        int cells = Math.max(nodes.getCellCount(), DEFAULT_BUCKETS);
+        _next = new int[cells];
+        _previous = new int[cells];
+        _key = new int[cells];
+    }
+
+    @Override
+    public int size() {
+        return _size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return _size == 0;
+    }
+
+    @Override
+    public void add(int cell) {
+        // a sparse store hands out more cell ids as the search grows
+        if (cell >= _next.length) {
+            int cells = Math.max(cell + 1, _next.length * 2);
+            _next = Arrays.copyOf(_next, cells);
+            _previous = Arrays.copyOf(_previous, cells);
+            _key = Arrays.copyOf(_key, cells);
+        }
+
+        int key = _nodes.getEstimatedDistance(cell);
+        if (_size == 0) {
+            _lowest = key;
+            _highest = key;
+        } else {
+            fit(key);
+        }
+        link(cell, key);
+        _size++;
+    }
+
+    @Override
+    public int peek() {
+        if (_size == 0) {
+            return NONE;
+        }
+
+        // the cells are all within one lap of the array, so this stops at the smallest
+        while (_heads[_lowest & _mask] == NONE) {
+            _lowest++;
+        }
+        return _heads[_lowest & _mask];
+    }
+
+    @Override
+    public int poll() {
+        int smallest = peek();
+        if (smallest != NONE) {
+            unlink(smallest);
+            _size--;
+        }
+        return smallest;
+    }
+
+    @Override
+    public void decreaseKey(int cell) {
+        unlink(cell);
+        int key = _nodes.getEstimatedDistance(cell);
+        fit(key);
+        link(cell, key);
+    }
+
+    @Override
+    public void clear() {
+        if (_size > 0) {
+            Arrays.fill(_heads, NONE);
+            _size = 0;
+        }
+    }
+
+    /**
+     * Widen the range of estimated distances to include a key, growing the
+     * array if the range no longer fits in it
+     * @param key
+     */
+    private void fit(int key) {
+        int lowest = Math.min(_lowest, key);
+        int highest = Math.max(_highest, key);
+        if ((long) highest - lowest >= _heads.length) {
+            grow((long) highest - lowest);
+        }
+        _lowest = lowest;
+        _highest = highest;
+    }
+
+    /**
+     * Replace the array with one larger than a range, moving every cell into
+     * its bucket in the new array
+     * @param range - The range of estimated distances to fit
+     */
+    private void grow(long range) {
+        int length = _heads.length;
+        while (length <= range) {
+            length *= 2;
+        }
+
+        int[] oldHeads = _heads;
+        _heads = new int[length];
+        _tails = new int[length];
+        Arrays.fill(_heads, NONE);
+        _mask = length - 1;
+
+        for (int bucket = 0; bucket < oldHeads.length; bucket++) {
+            int cell = oldHeads[bucket];
+            while (cell != NONE) {
+                int next = _next[cell];
+                link(cell, _key[cell]);
+                cell = next;
+            }
+        }
+    }
+
+    /**
+     * Add a cell to the back of the bucket for a key
+     * @param cell
+     * @param key
+     */
+    private void link(int cell, int key) {
+        int bucket = key & _mask;
+        if (_heads[bucket] == NONE) {
+            _heads[bucket] = cell;
+        } else {
+            _next[_tails[bucket]] = cell;
+        }
+        _previous[cell] = _heads[bucket] == cell ? NONE : _tails[bucket];
+        _next[cell] = NONE;
+        _tails[bucket] = cell;
+        _key[cell] = key;
+    }
+
+    /**
+     * Remove a cell from its bucket
+     * @param cell
+     */
+    private void unlink(int cell) {
+        int next = _next[cell];
+        int previous = _previous[cell];
+        int bucket = _key[cell] & _mask;
+        if (previous == NONE) {
+            _heads[bucket] = next;
+        } else {
+            _next[previous] = next;
+        }
+        if (next == NONE) {
+            _tails[bucket] = previous;
+        } else {
+            _previous[next] = previous;
+        }
+    }
+}
@@ -0,0 +1,508 @@
+package astar.pathfinder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import astar.info.Coordinate;
+import astar.info.Grid;
+import astar.info.GridListener;
+
+/**
+ * Incremental search (D* Lite) that keeps its search tree between calls. The
+ * search runs backwards from the end node, so every cell reached knows its
+ * distance to the end. The engine listens to the grid, and when blocks change
+ * the next findPath() only repairs the cells whose distance changed, instead
+ * of searching again from scratch. The start node may move between calls
+ * (eg. an agent following the path), changing the end node starts over.
+ *
+ * Moves cost the same as in Astar, and the diagonal distance is used as the
+ * heuristic, so paths have the same distance as the Diagonal method.
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public class DStarLite implements GridListener {
+    // distance of cells that can't reach the end
+    private static final int INFINITE = Integer.MAX_VALUE;
+
+    private Grid _grid = null;
+    private int _width;
+    private int _height;
+    private int _start = -1;
+    private int _end = -1;
+    private int _lastStart = -1;
+    private int _keyModifier = 0;
+    private boolean _restart = true;
+    private int[] _distance;      // g, the distance to the end as of the last expansion
+    private int[] _lookahead;     // rhs, the distance to the end through the best neighbour
+    private int[] _primaryKey;
+    private int[] _secondaryKey;
+    private int[] _heap;
+    private int[] _heapIndex;     // -1 if the cell isn't in the heap
+    private int _heapSize = 0;
+    private int[] _changedCells = new int[16];
+    private int _changedCount = 0;
+    private long _runtime = -1;
+    private int _pathDistance = -1;
+    private int _stepCount = 0;
+
+    /**
+     * Constructor
+     */
+    public DStarLite() {}
+
+    /**
+     * Set the Grid to use, the engine listens to it for block changes
+     * @param grid
+     */
+    public void setGrid(Grid grid) {
+        if (_grid != null) {
+            _grid.removeListener(this);
+        }
+        _grid = grid;
+        _grid.addListener(this);
+        _restart = true;
+    }
+
+    /**
+     * Stop listening to the grid
+     */
+    public void close() {
+        if (_grid != null) {
+            _grid.removeListener(this);
+            _grid = null;
+        }
+    }
+
+    /**
+     * Get the time the last call to findPath() took
+     * @return time in ms, -1 if the algorithm hasn't been run yet
+     */
+    public long getRuntime() {
+        return _runtime;
+    }
+
+    /**
+     * Get the distance for the path
+     * @return distance
+     */
+    public int getDistance() {
+        return _pathDistance;
+    }
+
+    /**
+     * Get the number of cells expanded by the last call to findPath()
+     * @return step count
+     */
+    public int getStepCount() {
+        return _stepCount;
+    }
+
+    /**
+     * Find the shortest path between the start and end of the grid
+     * @return list of coordinates (not including start or end), null if there is no path
+     * @throws Exception
+     */
+    public ArrayList<Coordinate> findPath() throws Exception {
+        return findPath(_grid.getStart(), _grid.getEnd());
+    }
+
+    /**
+     * Find the shortest path between two coordinates, reusing the search tree of
+     * the previous call if the end is the same
+     * @param start - The coordinate to start from
+     * @param end - The coordinate to find a path to
+     * @return list of coordinates (not including start or end), null if there is no path
+     * @throws Exception
+     */
+    public ArrayList<Coordinate> findPath(Coordinate start, Coordinate end) throws Exception {
+        long starttime = System.currentTimeMillis();
+
+        // grid should not be null
+        if (_grid == null) {
+            System.out.println("DStarLite.findPath called without grid being set first");
+            return null;
+        }
+
+        // start and end must be set and within the grid
+        if (start == null || end == null)
+            throw new Exception("Start and End nodes must be set");
+        if (!isWithinGrid(start) || !isWithinGrid(end))
+            throw new Exception("Invalid row or col number");
+
+        if (_restart || _width != _grid.getWidth() || _height != _grid.getHeight()
+                || end.getRow() * _grid.getWidth() + end.getCol() != _end) {
+            initialize(start, end);
+        }
+        _start = start.getRow() * _width + start.getCol();
+
+        // keys stored before the start moved are too small by the distance moved
+        if (_lastStart >= 0) {
+            _keyModifier += heuristic(_lastStart, _start);
+        }
+        _lastStart = _start;
+
+        // repair the cells around every block change
+        for (int i = 0; i < _changedCount; i++) {
+            int cell = _changedCells[i];
+            int row = cell / _width;
+            int col = cell % _width;
+            for (int j = 0; j < Grid.NEIGHBOUR_ROW_OFFSETS.length; j++) {
+                int r = row + Grid.NEIGHBOUR_ROW_OFFSETS[j];
+                int c = col + Grid.NEIGHBOUR_COL_OFFSETS[j];
+                if (r >= 0 && r < _height && c >= 0 && c < _width) {
+                    updateCell(r * _width + c);
+                }
+            }
+        }
+        _changedCount = 0;
+
+        _stepCount = 0;
+        computeShortestPath();
+
+        ArrayList<Coordinate> path = rebuildPath();
+        _pathDistance = path == null ? -1 : _lookahead[_start];
+        _runtime = System.currentTimeMillis() - starttime;
+        return path;
+    }
+
+    @Override
+    public void blockChanged(int row, int col, boolean blocked) {
+        // applied on the next findPath(), the grid may change many times in between
+        if (_restart || _width != _grid.getWidth()) {
+            return;
+        }
+        if (_changedCount == _changedCells.length) {
+            _changedCells = Arrays.copyOf(_changedCells, _changedCount * 2);
+        }
+        _changedCells[_changedCount++] = row * _width + col;
+    }
+
+    @Override
+    public void gridCleared() {
+        _restart = true;
+    }
+
+    /**
+     * Throw away the search tree and start a new one towards an end node
+     * @param start
+     * @param end
+     */
+    private void initialize(Coordinate start, Coordinate end) {
+        _width = _grid.getWidth();
+        _height = _grid.getHeight();
+        int cells = _width * _height;
+
+        if (_distance == null || _distance.length != cells) {
+            _distance = new int[cells];
+            _lookahead = new int[cells];
+            _primaryKey = new int[cells];
+            _secondaryKey = new int[cells];
+            _heap = new int[cells];
+            _heapIndex = new int[cells];
+        }
+        Arrays.fill(_distance, INFINITE);
+        Arrays.fill(_lookahead, INFINITE);
+        Arrays.fill(_heapIndex, -1);
+        _heapSize = 0;
+        _changedCount = 0;
+        _keyModifier = 0;
+        _lastStart = -1;
+        _restart = false;
+
+        // the end is the root of the (backwards) search tree
+        _end = end.getRow() * _width + end.getCol();
+        _lookahead[_end] = 0;
+        _start = start.getRow() * _width + start.getCol();
+        insert(_end);
+    }
+
+    /**
+     * Expand cells until the start's distance is known and can't change
+     */
+    private void computeShortestPath() {
+        while (_heapSize > 0
+                && (compareKeys(_heap[0], _start) < 0 || _lookahead[_start] != _distance[_start])) {
+            int cell = _heap[0];
+            int oldPrimary = _primaryKey[cell];
+            int oldSecondary = _secondaryKey[cell];
+            setKey(cell);
+
+            // keys go stale when the start moves, put the cell back with its current key
+            if (oldPrimary < _primaryKey[cell]
+                    || (oldPrimary == _primaryKey[cell] && oldSecondary < _secondaryKey[cell])) {
+                siftDown(0);
+                continue;
+            }
+
+            _stepCount++;
+            if (_distance[cell] > _lookahead[cell]) {
+                // the cell got closer to the end
+                _distance[cell] = _lookahead[cell];
+                remove(cell);
+                updatePredecessors(cell);
+            } else {
+                // the cell got further from the end, re-evaluate it and everything through it
+                _distance[cell] = INFINITE;
+                updateCell(cell);
+                updatePredecessors(cell);
+            }
+        }
+    }
+
+    /**
+     * Update every cell that can move to a cell
+     * @param cell
+     */
+    private void updatePredecessors(int cell) {
+        // moves onto blocks aren't allowed, so nothing depends on a block's distance
+        int row = cell / _width;
+        int col = cell % _width;
+        if (_grid.isBlocked(row, col)) {
+            return;
+        }
+
+        for (int i = 0; i < Grid.NEIGHBOUR_ROW_OFFSETS.length; i++) {
+            int r = row + Grid.NEIGHBOUR_ROW_OFFSETS[i];
+            int c = col + Grid.NEIGHBOUR_COL_OFFSETS[i];
+            if (r >= 0 && r < _height && c >= 0 && c < _width) {
+                updateCell(r * _width + c);
+            }
+        }
+    }
+
+    /**
+     * Recompute a cell's distance through its best neighbour and put it in the
+     * heap if that doesn't match its distance
+     * @param cell
+     */
+    private void updateCell(int cell) {
+        if (cell != _end) {
+            int row = cell / _width;
+            int col = cell % _width;
+            int mask = _grid.getNeighbourMask(row, col);
+            int best = INFINITE;
+            for (int i = 0; i < Grid.NEIGHBOUR_ROW_OFFSETS.length; i++) {
+                if ((mask & (1 << i)) == 0) {
+                    continue;
+                }
+                int neighbour = (row + Grid.NEIGHBOUR_ROW_OFFSETS[i]) * _width + col + Grid.NEIGHBOUR_COL_OFFSETS[i];
+                if (_distance[neighbour] != INFINITE) {
+                    int moveCost = (Grid.NEIGHBOUR_ROW_OFFSETS[i] != 0 && Grid.NEIGHBOUR_COL_OFFSETS[i] != 0)
+                            ? Grid.MOVE_DIAGONAL : Grid.MOVE_LATERAL;
+                    best = Math.min(best, _distance[neighbour] + moveCost);
+                }
+            }
+            _lookahead[cell] = best;
+        }
+
+        if (_distance[cell] != _lookahead[cell]) {
+            if (_heapIndex[cell] < 0) {
+                insert(cell);
+            } else {
+                setKey(cell);
+                siftUp(_heapIndex[cell]);
+                siftDown(_heapIndex[cell]);
+            }
+        } else if (_heapIndex[cell] >= 0) {
+            remove(cell);
+        }
+    }
+
+    /**
+     * Build list of coordinates from the start to the end by following the
+     * neighbours closest to the end
+     * @return list of coordinates (not including start or end), null if there is no path
+     */
+    private ArrayList<Coordinate> rebuildPath() {
+        if (_lookahead[_start] == INFINITE) {
+            return null;
+        }
+
+        ArrayList<Coordinate> path = new ArrayList<Coordinate>();
+        if (_start == _end) {
+            return path;
+        }
+        int cell = _start;
+        while (true) {
+            int row = cell / _width;
+            int col = cell % _width;
+            int mask = _grid.getNeighbourMask(row, col);
+            int next = -1;
+            int best = INFINITE;
+            for (int i = 0; i < Grid.NEIGHBOUR_ROW_OFFSETS.length; i++) {
+                if ((mask & (1 << i)) == 0) {
+                    continue;
+                }
+                int neighbour = (row + Grid.NEIGHBOUR_ROW_OFFSETS[i]) * _width + col + Grid.NEIGHBOUR_COL_OFFSETS[i];
+                if (_distance[neighbour] != INFINITE) {
+                    int moveCost = (Grid.NEIGHBOUR_ROW_OFFSETS[i] != 0 && Grid.NEIGHBOUR_COL_OFFSETS[i] != 0)
+                            ? Grid.MOVE_DIAGONAL : Grid.MOVE_LATERAL;
+                    if (_distance[neighbour] + moveCost < best) {
+                        best = _distance[neighbour] + moveCost;
+                        next = neighbour;
+                    }
+                }
+            }
+
+            // the distances only lead to the end if the tree is consistent, guard against looping anyway
+            if (next < 0 || path.size() > _distance.length) {
+                return null;
+            }
+            if (next == _end) {
+                return path;
+            }
+            path.add(new Coordinate(next / _width, next % _width));
+            cell = next;
+        }
+    }
+
+    /**
+     * Get the diagonal distance between two cells, ignoring blocks
+     * @param from
+     * @param to
+     * @return estimated distance
+     */
+    private int heuristic(int from, int to) {
+        int rows = Math.abs(from / _width - to / _width);
+        int cols = Math.abs(from % _width - to % _width);
+        return Grid.MOVE_DIAGONAL * Math.min(rows, cols) + Grid.MOVE_LATERAL * Math.abs(rows - cols);
+    }
+
+    /**
+     * Check if a coordinate is within the grid
+     * @param coord
+     * @return true if the coordinate is within the grid
+     */
+    private boolean isWithinGrid(Coordinate coord) {
+        return coord.getRow() >= 0 && coord.getRow() < _grid.getHeight()
+                && coord.getCol() >= 0 && coord.getCol() < _grid.getWidth();
+    }
+
+    /**
+     * Set the heap key of a cell from its current distances
+     * @param cell
+     */
+    private void setKey(int cell) {
+        int distance = Math.min(_distance[cell], _lookahead[cell]);
+        if (distance == INFINITE) {
+            _primaryKey[cell] = INFINITE;
+        } else {
+            _primaryKey[cell] = distance + heuristic(_start, cell) + _keyModifier;
+        }
+        _secondaryKey[cell] = distance;
+    }
+
+    /**
+     * Compare the stored key of a cell with the current key of another cell
+     * @param cell - The cell whose stored key is compared
+     * @param other - The cell whose key is computed
+     * @return negative, zero or positive as the first key is smaller, equal or larger
+     */
+    private int compareKeys(int cell, int other) {
+        int distance = Math.min(_distance[other], _lookahead[other]);
+        int primary = distance == INFINITE ? INFINITE : distance + _keyModifier;
+        if (_primaryKey[cell] != primary) {
+            return _primaryKey[cell] < primary ? -1 : 1;
+        }
+        if (_secondaryKey[cell] != distance) {
+            return _secondaryKey[cell] < distance ? -1 : 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Add a cell to the heap with its current key
+     * @param cell
+     */
+    private void insert(int cell) {
+        setKey(cell);
+        _heap[_heapSize] = cell;
+        _heapIndex[cell] = _heapSize;
+        _heapSize++;
+        siftUp(_heapSize - 1);
+    }
+
+    /**
+     * Remove a cell from the heap
+     * @param cell
+     */
+    private void remove(int cell) {
+        int index = _heapIndex[cell];
+        _heapIndex[cell] = -1;
+        _heapSize--;
+
+        // move the last cell into the hole and restore the heap order around it
+        if (index < _heapSize) {
+            _heap[index] = _heap[_heapSize];
+            _heapIndex[_heap[index]] = index;
+            siftUp(index);
+            siftDown(index);
+        }
+    }
+
+    /**
+     * Move the cell at an index up until its parent is not larger
+     * @param index
+     */
+    private void siftUp(int index) {
+        int cell = _heap[index];
+
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!isSmaller(cell, _heap[parent])) {
+                break;
+            }
+            _heap[index] = _heap[parent];
+            _heapIndex[_heap[index]] = index;
+            index = parent;
+        }
+
+        _heap[index] = cell;
+        _heapIndex[cell] = index;
+    }
+
+    /**
+     * Move the cell at an index down until neither child is smaller
+     * @param index
+     */
+    private void siftDown(int index) {
+        int cell = _heap[index];
+        int half = _heapSize >>> 1;
+
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < _heapSize && isSmaller(_heap[right], _heap[child])) {
+                child = right;
+            }
+            if (!isSmaller(_heap[child], cell)) {
+                break;
+            }
+            _heap[index] = _heap[child];
+            _heapIndex[_heap[index]] = index;
+            index = child;
+        }
+
+        _heap[index] = cell;
+        _heapIndex[cell] = index;
+    }
+
+    /**
+     * Compare the stored keys of two cells
+     * @param a
+     * @param b
+     * @return true if a should be expanded before b
+     */
+    private boolean isSmaller(int a, int b) {
+        if (_primaryKey[a] != _primaryKey[b]) {
+            return _primaryKey[a] < _primaryKey[b];
+        }
+        return _secondaryKey[a] < _secondaryKey[b];
+    }
+
+    @Override
+    public String toString() {
+        return "D* Lite";
+    }
+}
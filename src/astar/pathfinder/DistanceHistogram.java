@@ -0,0 +1,79 @@
+package astar.pathfinder;
+
+import java.util.Arrays;
+
+/**
+ * Count of cells at each distance, used to track the smallest distance of any
+ * open cell without searching the open nodes. Distances are small non-negative
+ * ints (multiples of the move costs), so the counts are held in an array
+ * indexed by distance.
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public class DistanceHistogram {
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private int[] _counts = new int[DEFAULT_CAPACITY];
+    private int _size = 0;
+    private int _smallest = Integer.MAX_VALUE;
+    private int _largest = -1;
+
+    /**
+     * Constructor
+     */
+    public DistanceHistogram() {}
+
+    /**
+     * Count a cell at a distance
+     * @param distance
+     */
+    public void add(int distance) {
+        // grow the counts to fit the distance
+        if (distance >= _counts.length) {
+            _counts = Arrays.copyOf(_counts, Math.max(_counts.length * 2, distance + 1));
+        }
+
+        _counts[distance]++;
+        _size++;
+        _smallest = Math.min(_smallest, distance);
+        _largest = Math.max(_largest, distance);
+    }
+
+    /**
+     * Stop counting a cell at a distance
+     * @param distance - A distance previously passed to add()
+     */
+    public void remove(int distance) {
+        _counts[distance]--;
+        _size--;
+    }
+
+    /**
+     * Get the smallest distance with any cells
+     * @return smallest distance, Integer.MAX_VALUE if there are no cells
+     */
+    public int smallest() {
+        if (_size == 0) {
+            return Integer.MAX_VALUE;
+        }
+
+        // the smallest distance only moves up when its cells are removed
+        while (_counts[_smallest] == 0) {
+            _smallest++;
+        }
+        return _smallest;
+    }
+
+    /**
+     * Remove all cells (only the distances used since the last clear are reset)
+     */
+    public void clear() {
+        if (_largest >= 0) {
+            Arrays.fill(_counts, 0, _largest + 1, 0);
+        }
+        _size = 0;
+        _smallest = Integer.MAX_VALUE;
+        _largest = -1;
+    }
+}
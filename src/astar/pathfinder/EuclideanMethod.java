@@ -13,8 +13,8 @@ public class EuclideanMethod extends Astar {
 
     @Override
     protected int estimateDistance(Coordinate coord) {
-        int x = Math.abs(coord.getRow() - _grid.getEnd().getRow());
-        int y = Math.abs(coord.getCol() - _grid.getEnd().getCol());
+        int x = Math.abs(coord.getRow() - getTarget().getRow());
+        int y = Math.abs(coord.getCol() - getTarget().getCol());
         int squared = x*x + y*y;
         int distance = (int)Math.floor(Math.sqrt(squared));
         return distance * Grid.MOVE_LATERAL;
@@ -0,0 +1,241 @@
+package astar.pathfinder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import astar.info.Coordinate;
+import astar.info.Grid;
+
+/**
+ * Distance and direction to a single goal for every cell of a Grid, built by
+ * one Dijkstra search backwards from the goal. Any number of agents heading
+ * for the goal can then follow the directions instead of each running its own
+ * search, and as the field isn't changed after it's built it can be shared
+ * between threads.
+ *
+ * The field is a snapshot of the grid when it was built, so it needs building
+ * again after blocks change.
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public class FlowField {
+    /**
+     * Direction of the goal and of cells that can't reach it
+     */
+    public static final int NO_DIRECTION = -1;
+
+    // index of the opposite neighbour offset, for each neighbour offset
+    private static final int[] OPPOSITE = oppositeNeighbours();
+
+    private final int _width;
+    private final int _height;
+    private final Coordinate _goal;
+    private final int[] _distances;
+    private final byte[] _directions;
+    private final int _stepCount;
+    private final long _runtime;
+
+    /**
+     * Constructor - build the field for a goal
+     * @param grid - The grid to build the field over
+     * @param goal - The coordinate every cell's path leads to
+     * @throws Exception
+     */
+    public FlowField(Grid grid, Coordinate goal) throws Exception {
+        long starttime = System.currentTimeMillis();
+
+        // check that the goal is within the grid
+        if (goal == null)
+            throw new Exception("Goal node must be set");
+        if (goal.getRow() < 0 || goal.getRow() >= grid.getHeight() || goal.getCol() < 0 || goal.getCol() >= grid.getWidth())
+            throw new Exception("Invalid row or col number");
+
+        _width = grid.getWidth();
+        _height = grid.getHeight();
+        _goal = goal.clone();
+        _distances = new int[_width * _height];
+        _directions = new byte[_width * _height];
+        Arrays.fill(_distances, -1);
+        Arrays.fill(_directions, (byte) NO_DIRECTION);
+
+        _stepCount = build(grid);
+        _runtime = System.currentTimeMillis() - starttime;
+    }
+
+    /**
+     * Run the search backwards from the goal, filling in the distances and directions
+     * @param grid
+     * @return number of cells expanded
+     */
+    private int build(Grid grid) {
+        SearchWorkspace workspace = new SearchWorkspace(_width, _height);
+        NodeStore nodes = workspace.getNodes();
+        NodeHeap openNodes = workspace.getOpenNodes();
+        int stepCount = 0;
+
+        int goalCell = nodes.cell(_goal);
+        nodes.setDistance(goalCell, 0);
+        nodes.setEstimatedDistance(goalCell, 0);
+        nodes.setState(goalCell, NodeStore.OPEN);
+        openNodes.add(goalCell);
+
+        while (!openNodes.isEmpty()) {
+            int cell = openNodes.poll();
+            nodes.setState(cell, NodeStore.CLOSED);
+            int distance = nodes.getDistance(cell);
+            _distances[cell] = distance;
+
+            // a cell can be left when it's a block (eg. an agent standing on one),
+            //   but not entered, so nothing else leads through it
+            int row = nodes.row(cell);
+            int col = nodes.col(cell);
+            if (grid.isBlocked(row, col)) {
+                continue;
+            }
+            stepCount++;
+
+            // every cell around this one can move to it
+            for (int i = 0; i < Grid.NEIGHBOUR_ROW_OFFSETS.length; i++) {
+                int rowOffset = Grid.NEIGHBOUR_ROW_OFFSETS[i];
+                int colOffset = Grid.NEIGHBOUR_COL_OFFSETS[i];
+                int r = row + rowOffset;
+                int c = col + colOffset;
+                if (r < 0 || r >= _height || c < 0 || c >= _width) {
+                    continue;
+                }
+
+                int neighbour = nodes.cell(r, c);
+                byte state = nodes.getState(neighbour);
+                int neighbourDistance = distance + (rowOffset == 0 || colOffset == 0 ? Grid.MOVE_LATERAL : Grid.MOVE_DIAGONAL);
+                if (state == NodeStore.CLOSED || (state == NodeStore.OPEN && nodes.getDistance(neighbour) <= neighbourDistance)) {
+                    continue;
+                }
+
+                // the neighbour's next step is back to this cell
+                nodes.setDistance(neighbour, neighbourDistance);
+                nodes.setEstimatedDistance(neighbour, neighbourDistance);
+                _directions[neighbour] = (byte) OPPOSITE[i];
+                if (state == NodeStore.UNSEEN) {
+                    nodes.setState(neighbour, NodeStore.OPEN);
+                    openNodes.add(neighbour);
+                } else {
+                    openNodes.decreaseKey(neighbour);
+                }
+            }
+        }
+        return stepCount;
+    }
+
+    /**
+     * Get the goal the field leads to
+     * @return goal coordinate
+     */
+    public Coordinate getGoal() {
+        return _goal.clone();
+    }
+
+    /**
+     * Get the width of the grid the field was built over
+     * @return number of columns
+     */
+    public int getWidth() {
+        return _width;
+    }
+
+    /**
+     * Get the height of the grid the field was built over
+     * @return number of rows
+     */
+    public int getHeight() {
+        return _height;
+    }
+
+    /**
+     * Get the number of cells expanded to build the field
+     * @return step count
+     */
+    public int getStepCount() {
+        return _stepCount;
+    }
+
+    /**
+     * Get the time building the field took
+     * @return time in ms
+     */
+    public long getRuntime() {
+        return _runtime;
+    }
+
+    /**
+     * Get the distance of the shortest path from a cell to the goal, without bounds checking
+     * @param row - The row, must be within the grid
+     * @param col - The column, must be within the grid
+     * @return distance, -1 if the goal can't be reached from the cell
+     */
+    public int getDistance(int row, int col) {
+        return _distances[row * _width + col];
+    }
+
+    /**
+     * Get the first move of the shortest path from a cell to the goal, without bounds checking
+     * @param row - The row, must be within the grid
+     * @param col - The column, must be within the grid
+     * @return index into Grid.NEIGHBOUR_ROW_OFFSETS and NEIGHBOUR_COL_OFFSETS, NO_DIRECTION
+     *         for the goal or if the goal can't be reached from the cell
+     */
+    public int getDirection(int row, int col) {
+        return _directions[row * _width + col];
+    }
+
+    /**
+     * Follow the directions from a coordinate to the goal
+     * @param start - The coordinate to start from
+     * @return list of coordinates in order (not including start or goal), null if the goal can't be reached
+     * @throws Exception
+     */
+    public ArrayList<Coordinate> getPath(Coordinate start) throws Exception {
+        // check that the coordinate is within the grid
+        if (start == null)
+            throw new Exception("Start node must be set");
+        if (start.getRow() < 0 || start.getRow() >= _height || start.getCol() < 0 || start.getCol() >= _width)
+            throw new Exception("Invalid row or col number");
+
+        int row = start.getRow();
+        int col = start.getCol();
+        if (getDistance(row, col) < 0) {
+            return null;
+        }
+
+        ArrayList<Coordinate> path = new ArrayList<Coordinate>();
+        int direction = getDirection(row, col);
+        while (direction != NO_DIRECTION) {
+            row += Grid.NEIGHBOUR_ROW_OFFSETS[direction];
+            col += Grid.NEIGHBOUR_COL_OFFSETS[direction];
+            direction = getDirection(row, col);
+
+            // the goal is the only reachable cell without a direction
+            if (direction != NO_DIRECTION) {
+                path.add(new Coordinate(row, col));
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Find the opposite of each neighbour offset
+     * @return index of the opposite offset, for each offset
+     */
+    private static int[] oppositeNeighbours() {
+        int[] opposite = new int[Grid.NEIGHBOUR_ROW_OFFSETS.length];
+        for (int i = 0; i < opposite.length; i++) {
+            for (int j = 0; j < opposite.length; j++) {
+                if (Grid.NEIGHBOUR_ROW_OFFSETS[j] == -Grid.NEIGHBOUR_ROW_OFFSETS[i]
+                        && Grid.NEIGHBOUR_COL_OFFSETS[j] == -Grid.NEIGHBOUR_COL_OFFSETS[i]) {
+                    opposite[i] = j;
+                }
+            }
+        }
+        return opposite;
+    }
+}
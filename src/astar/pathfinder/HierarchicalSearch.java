@@ -0,0 +1,890 @@
+package astar.pathfinder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+import astar.info.Coordinate;
+import astar.info.Grid;
+import astar.info.GridListener;
+
+/**
+ * Hierarchical pathfinding (HPA*) for large grids. The grid is split into
+ * square clusters, and the cells where a path can cross from one cluster to
+ * the next (entrances) become the nodes of a much smaller abstract graph,
+ * connected by their distances within each cluster. A query searches the
+ * abstract graph first and then only refines the cluster segments of the
+ * abstract path into cells.
+ *
+ * Clusters are built the first time a search needs them (or all at once with
+ * precompute()), and a block change only rebuilds the clusters around the
+ * changed cell. Paths are found whenever one exists, but are not always the
+ * shortest: getDistance() can be compared with a flat search to measure how
+ * much longer the paths are.
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public class HierarchicalSearch implements GridListener {
+    /**
+     * Default number of cells along a side of a cluster
+     */
+    public static final int DEFAULT_CLUSTER_SIZE = 16;
+
+    // entrances at least this wide get a transition at each end instead of one in the middle
+    private static final int WIDE_ENTRANCE = 6;
+
+    // distance of cells or nodes that can't be reached
+    private static final int INFINITE = Integer.MAX_VALUE;
+
+    private Grid _grid = null;
+    private int _clusterSize;
+    private int _clustersWide;
+    private int _clustersHigh;
+    private Cluster[] _clusters;  // null if the cluster has to be (re)built
+    private NodeStore _local;     // search state for a single cluster
+    private NodeHeap _localOpen;
+    private int _localSteps;
+    private long _runtime = -1;
+    private int _distance = -1;
+    private int _abstractStepCount = 0;
+    private int _refinementStepCount = 0;
+    private int _abstractPathLength = 0;
+    private int _clusterBuildCount = 0;
+
+    /**
+     * Constructor - use clusters of DEFAULT_CLUSTER_SIZE cells
+     */
+    public HierarchicalSearch() {
+        this(DEFAULT_CLUSTER_SIZE);
+    }
+
+    /**
+     * Constructor
+     * @param clusterSize - The number of cells along a side of a cluster
+     */
+    public HierarchicalSearch(int clusterSize) {
+        _clusterSize = clusterSize;
+        _local = new NodeStore(clusterSize, clusterSize);
+        _localOpen = new NodeHeap(_local);
+    }
+
+    /**
+     * Set the Grid to use, the search listens to it for block changes
+     * @param grid
+     */
+    public void setGrid(Grid grid) {
+        if (_grid != null) {
+            _grid.removeListener(this);
+        }
+        _grid = grid;
+        _grid.addListener(this);
+        _clustersWide = (grid.getWidth() + _clusterSize - 1) / _clusterSize;
+        _clustersHigh = (grid.getHeight() + _clusterSize - 1) / _clusterSize;
+        _clusters = new Cluster[_clustersWide * _clustersHigh];
+    }
+
+    /**
+     * Stop listening to the grid
+     */
+    public void close() {
+        if (_grid != null) {
+            _grid.removeListener(this);
+            _grid = null;
+        }
+    }
+
+    /**
+     * Build every cluster that isn't built yet, instead of on first use
+     */
+    public void precompute() {
+        for (int cluster = 0; cluster < _clusters.length; cluster++) {
+            getCluster(cluster);
+        }
+    }
+
+    /**
+     * Get the time the last search took
+     * @return time in ms, -1 if the algorithm hasn't been run yet
+     */
+    public long getRuntime() {
+        return _runtime;
+    }
+
+    /**
+     * Get the distance for the path
+     * @return distance
+     */
+    public int getDistance() {
+        return _distance;
+    }
+
+    /**
+     * Get the number of steps the last search took (the nodes expanded in the
+     * abstract graph plus the cells expanded within clusters)
+     * @return step count
+     */
+    public int getStepCount() {
+        return _abstractStepCount + _refinementStepCount;
+    }
+
+    /**
+     * Get the number of abstract nodes the last search expanded
+     * @return step count
+     */
+    public int getAbstractStepCount() {
+        return _abstractStepCount;
+    }
+
+    /**
+     * Get the number of cells the last search expanded within clusters, connecting
+     * the start and end to the abstract graph and refining the abstract path
+     * @return step count
+     */
+    public int getRefinementStepCount() {
+        return _refinementStepCount;
+    }
+
+    /**
+     * Get the number of abstract nodes on the last path found, including start and end
+     * @return abstract path length, 0 if there was no path
+     */
+    public int getAbstractPathLength() {
+        return _abstractPathLength;
+    }
+
+    /**
+     * Get the number of clusters built since the grid was set, including rebuilds after block changes
+     * @return cluster build count
+     */
+    public int getClusterBuildCount() {
+        return _clusterBuildCount;
+    }
+
+    /**
+     * Find a path between the start and end of the grid
+     * @return list of coordinates (not including start or end), null if there is no path
+     * @throws Exception
+     */
+    public ArrayList<Coordinate> findPath() throws Exception {
+        return findPath(_grid.getStart(), _grid.getEnd());
+    }
+
+    /**
+     * Find a path between two coordinates
+     * @param start - The coordinate to start from
+     * @param end - The coordinate to find a path to
+     * @return list of coordinates (not including start or end), null if there is no path
+     * @throws Exception
+     */
+    public ArrayList<Coordinate> findPath(Coordinate start, Coordinate end) throws Exception {
+        long starttime = System.currentTimeMillis();
+
+        // grid should not be null
+        if (_grid == null) {
+            System.out.println("HierarchicalSearch.findPath called without grid being set first");
+            return null;
+        }
+
+        // start and end must be set and within the grid
+        if (start == null || end == null)
+            throw new Exception("Start and End nodes must be set");
+        if (!isWithinGrid(start) || !isWithinGrid(end))
+            throw new Exception("Invalid row or col number");
+
+        _distance = -1;
+        _abstractStepCount = 0;
+        _refinementStepCount = 0;
+        _abstractPathLength = 0;
+
+        ArrayList<Coordinate> path = null;
+        int startCell = start.getRow() * _grid.getWidth() + start.getCol();
+        int endCell = end.getRow() * _grid.getWidth() + end.getCol();
+        if (startCell == endCell) {
+            _distance = 0;
+            path = new ArrayList<Coordinate>();
+        } else if (!_grid.isBlocked(end.getRow(), end.getCol())) {
+            // blocks can't be moved onto, so a blocked end can't be reached
+            State goal = searchAbstractGraph(startCell, endCell);
+            if (goal != null) {
+                _distance = goal._distance;
+                path = refinePath(goal);
+            }
+        }
+
+        _runtime = System.currentTimeMillis() - starttime;
+        return path;
+    }
+
+    @Override
+    public void blockChanged(int row, int col, boolean blocked) {
+        // the entrances of a cluster depend on the cells next to it, so rebuild
+        //   every cluster within one cell of the change
+        for (int r = Math.max(row - 1, 0); r <= Math.min(row + 1, _grid.getHeight() - 1); r++) {
+            for (int c = Math.max(col - 1, 0); c <= Math.min(col + 1, _grid.getWidth() - 1); c++) {
+                _clusters[clusterOf(r, c)] = null;
+            }
+        }
+    }
+
+    @Override
+    public void gridCleared() {
+        _clusters = new Cluster[_clusters.length];
+    }
+
+    /**
+     * Search the abstract graph, with the start and end connected to the
+     * entrances of their clusters
+     * @param startCell
+     * @param endCell
+     * @return the state of the end, with parents back to the start, null if there is no path
+     */
+    private State searchAbstractGraph(int startCell, int endCell) {
+        int startCluster = clusterOf(startCell);
+        int endCluster = clusterOf(endCell);
+        Cluster endNodes = getCluster(endCluster);
+
+        // distances from the end to the entrances of its cluster (moves between free cells
+        //   cost the same both ways)
+        searchCluster(endCluster, endCell, -1);
+        int[] endDistances = localDistances(endCluster, endNodes._cells);
+        _refinementStepCount += _localSteps;
+
+        // distances from the start to the entrances of its cluster, and to the end if it is in the same cluster
+        Cluster startNodes = getCluster(startCluster);
+        searchCluster(startCluster, startCell, -1);
+        int[] startDistances = localDistances(startCluster, startNodes._cells);
+        int directDistance = startCluster == endCluster ? localDistance(startCluster, endCell) : INFINITE;
+        _refinementStepCount += _localSteps;
+
+        HashMap<Integer, State> states = new HashMap<Integer, State>();
+        PriorityQueue<QueueEntry> open = new PriorityQueue<QueueEntry>();
+        State start = new State(startCell, startCluster, -1);
+        State goal = new State(endCell, endCluster, -1);
+        start._distance = 0;
+        open.add(new QueueEntry(start, estimate(startCell, endCell)));
+
+        while (!open.isEmpty()) {
+            QueueEntry entry = open.poll();
+            State state = entry._state;
+            if (state._closed || entry._estimatedDistance != state._distance + estimate(state._cell, endCell)) {
+                continue;
+            }
+            if (state == goal) {
+                return goal;
+            }
+            state._closed = true;
+            _abstractStepCount++;
+
+            if (state == start) {
+                // the start connects to the entrances of its cluster, and maybe the end directly
+                for (int i = 0; i < startNodes._cells.length; i++) {
+                    relax(start, nodeState(states, startCluster, i), startDistances[i], false, endCell, open);
+                }
+                relax(start, goal, directDistance, false, endCell, open);
+                if (_grid.isBlocked(startCell)) {
+                    relaxBlockedStart(start, goal, states, endCell, open);
+                }
+                continue;
+            }
+
+            // entrances connect to the other entrances of their cluster and across to the next cluster
+            Cluster cluster = getCluster(state._cluster);
+            int node = state._node;
+            for (int i = 0; i < cluster._cells.length; i++) {
+                if (i != node) {
+                    State next = nodeState(states, state._cluster, i);
+                    relax(state, next, cluster._distances[node][i], false, endCell, open);
+                }
+            }
+            for (int i = 0; i < cluster._crossingCells[node].length; i++) {
+                int cell = cluster._crossingCells[node][i];
+                int other = clusterOf(cell);
+                State next = nodeState(states, other, getCluster(other).indexOf(cell));
+                relax(state, next, cluster._crossingCosts[node][i], true, endCell, open);
+            }
+            if (state._cluster == endCluster) {
+                relax(state, goal, endDistances[node], false, endCell, open);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Connect a blocked start to the entrances of the other clusters next to it. A
+     * start on a block can still be moved off, and if the cells around it within
+     * its own cluster are blocks too the first move has to cross into another
+     * cluster, which isn't through an entrance
+     * @param start - The state of the start
+     * @param goal - The state of the end
+     * @param states - The states created so far, by cell
+     * @param endCell - The cell being searched for
+     * @param open - The open states
+     */
+    private void relaxBlockedStart(State start, State goal, HashMap<Integer, State> states, int endCell,
+            PriorityQueue<QueueEntry> open) {
+        int width = _grid.getWidth();
+        int row = start._cell / width;
+        int col = start._cell % width;
+        int mask = _grid.getNeighbourMask(row, col);
+
+        for (int i = 0; i < Grid.NEIGHBOUR_ROW_OFFSETS.length; i++) {
+            int firstStep = (row + Grid.NEIGHBOUR_ROW_OFFSETS[i]) * width + col + Grid.NEIGHBOUR_COL_OFFSETS[i];
+            int cluster = clusterOf(firstStep);
+            if ((mask & (1 << i)) == 0 || cluster == start._cluster) {
+                continue;
+            }
+
+            int moveCost = (Grid.NEIGHBOUR_ROW_OFFSETS[i] != 0 && Grid.NEIGHBOUR_COL_OFFSETS[i] != 0)
+                    ? Grid.MOVE_DIAGONAL : Grid.MOVE_LATERAL;
+            Cluster nodes = getCluster(cluster);
+            searchCluster(cluster, firstStep, -1);
+            _refinementStepCount += _localSteps;
+
+            for (int j = 0; j < nodes._cells.length; j++) {
+                int distance = localDistance(cluster, nodes._cells[j]);
+                State next = nodeState(states, cluster, j);
+                if (distance != INFINITE && relax(start, next, moveCost + distance, false, endCell, open)) {
+                    next._firstStep = firstStep;
+                }
+            }
+            if (cluster == goal._cluster) {
+                int distance = localDistance(cluster, endCell);
+                if (distance != INFINITE && relax(start, goal, moveCost + distance, false, endCell, open)) {
+                    goal._firstStep = firstStep;
+                }
+            }
+        }
+    }
+
+    /**
+     * Lower the distance of a state if it can be reached for less through another state
+     * @param from - The state being expanded
+     * @param to - The state reached
+     * @param cost - The distance between the two states, INFINITE if there is no move
+     * @param crossing - true if the move crosses from one cluster to the next
+     * @param endCell - The cell being searched for
+     * @param open - The open states
+     * @return true if the distance of the state was lowered
+     */
+    private boolean relax(State from, State to, int cost, boolean crossing, int endCell,
+            PriorityQueue<QueueEntry> open) {
+        if (cost == INFINITE || to._closed || from._distance + cost >= to._distance) {
+            return false;
+        }
+        to._distance = from._distance + cost;
+        to._parent = from;
+        to._crossing = crossing;
+        to._firstStep = -1;
+        open.add(new QueueEntry(to, to._distance + estimate(to._cell, endCell)));
+        return true;
+    }
+
+    /**
+     * Get the state of an entrance, creating it the first time it is reached
+     * @param states - The states created so far, by cell
+     * @param cluster - The cluster of the entrance
+     * @param node - The index of the entrance within its cluster
+     * @return state
+     */
+    private State nodeState(HashMap<Integer, State> states, int cluster, int node) {
+        int cell = getCluster(cluster)._cells[node];
+        State state = states.get(cell);
+        if (state == null) {
+            state = new State(cell, cluster, node);
+            states.put(cell, state);
+        }
+        return state;
+    }
+
+    /**
+     * Turn an abstract path into cells, searching within a cluster for each
+     * segment between two entrances
+     * @param goal - The state of the end, with parents back to the start
+     * @return list of coordinates (not including start or end)
+     */
+    private ArrayList<Coordinate> refinePath(State goal) {
+        // collect the abstract path from start to end
+        ArrayList<State> states = new ArrayList<State>();
+        for (State state = goal; state != null; state = state._parent) {
+            states.add(0, state);
+        }
+        _abstractPathLength = states.size();
+
+        ArrayList<Coordinate> path = new ArrayList<Coordinate>();
+        int width = _grid.getWidth();
+        for (int i = 1; i < states.size(); i++) {
+            State from = states.get(i - 1);
+            State to = states.get(i);
+
+            // segments within a cluster are searched for, a crossing is a single move
+            if (to._firstStep >= 0 && to._firstStep != to._cell) {
+                path.add(new Coordinate(to._firstStep / width, to._firstStep % width));
+                int cluster = clusterOf(to._firstStep);
+                searchCluster(cluster, to._firstStep, to._cell);
+                _refinementStepCount += _localSteps;
+                addLocalPath(cluster, to._cell, path);
+            } else if (to._firstStep < 0 && !to._crossing && from._cell != to._cell) {
+                int cluster = clusterOf(from._cell);
+                searchCluster(cluster, from._cell, to._cell);
+                _refinementStepCount += _localSteps;
+                addLocalPath(cluster, to._cell, path);
+            }
+            // the path doesn't include the start or end, which can also be entrances
+            if (to._cell != goal._cell && from._cell != to._cell) {
+                path.add(new Coordinate(to._cell / width, to._cell % width));
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Add the cells of a path found by searchCluster() to a list, from the root
+     * of the search up to (not including) a cell
+     * @param cluster - The cluster searched
+     * @param cell - The cell the path leads to
+     * @param path - The list to add to
+     */
+    private void addLocalPath(int cluster, int cell, ArrayList<Coordinate> path) {
+        int rowOffset = (cluster / _clustersWide) * _clusterSize;
+        int colOffset = (cluster % _clustersWide) * _clusterSize;
+        int size = path.size();
+
+        // walk back from the cell, skipping the cell and the root
+        int local = toLocal(cluster, cell);
+        local = _local.getParent(local);
+        while (local != NodeStore.NO_PARENT && _local.getParent(local) != NodeStore.NO_PARENT) {
+            path.add(size, new Coordinate(_local.row(local) + rowOffset, _local.col(local) + colOffset));
+            local = _local.getParent(local);
+        }
+    }
+
+    /**
+     * Search within a single cluster from a cell, expanding every reachable cell
+     * of the cluster or stopping once a target is reached. The results are left
+     * in _local, and the number of cells expanded in _localSteps
+     * @param cluster - The cluster to search within
+     * @param from - The cell to start from, must be within the cluster
+     * @param to - The cell to find, -1 to expand every reachable cell
+     */
+    private void searchCluster(int cluster, int from, int to) {
+        int rowOffset = (cluster / _clustersWide) * _clusterSize;
+        int colOffset = (cluster % _clustersWide) * _clusterSize;
+        int rowLimit = Math.min(rowOffset + _clusterSize, _grid.getHeight());
+        int colLimit = Math.min(colOffset + _clusterSize, _grid.getWidth());
+        int target = to < 0 ? -1 : toLocal(cluster, to);
+
+        _local.reset();
+        _localOpen.clear();
+        _localSteps = 0;
+
+        int root = toLocal(cluster, from);
+        _local.setDistance(root, 0);
+        _local.setEstimatedDistance(root, to < 0 ? 0 : estimate(from, to));
+        _local.setParent(root, NodeStore.NO_PARENT);
+        _local.setState(root, NodeStore.OPEN);
+        _localOpen.add(root);
+
+        while (!_localOpen.isEmpty()) {
+            int current = _localOpen.poll();
+            _local.setState(current, NodeStore.CLOSED);
+            _localSteps++;
+            if (current == target) {
+                return;
+            }
+
+            int row = _local.row(current) + rowOffset;
+            int col = _local.col(current) + colOffset;
+            int mask = _grid.getNeighbourMask(row, col);
+            for (int i = 0; i < Grid.NEIGHBOUR_ROW_OFFSETS.length; i++) {
+                int r = row + Grid.NEIGHBOUR_ROW_OFFSETS[i];
+                int c = col + Grid.NEIGHBOUR_COL_OFFSETS[i];
+                if ((mask & (1 << i)) == 0 || r < rowOffset || r >= rowLimit || c < colOffset || c >= colLimit) {
+                    continue;
+                }
+
+                int next = _local.cell(r - rowOffset, c - colOffset);
+                byte state = _local.getState(next);
+                if (state == NodeStore.CLOSED) {
+                    continue;
+                }
+
+                int moveCost = (Grid.NEIGHBOUR_ROW_OFFSETS[i] != 0 && Grid.NEIGHBOUR_COL_OFFSETS[i] != 0)
+                        ? Grid.MOVE_DIAGONAL : Grid.MOVE_LATERAL;
+                int distance = _local.getDistance(current) + moveCost;
+                if (state == NodeStore.OPEN && distance >= _local.getDistance(next)) {
+                    continue;
+                }
+
+                int estimatedDistance = distance;
+                if (to >= 0) {
+                    estimatedDistance += estimate(r * _grid.getWidth() + c, to);
+                }
+                _local.setDistance(next, distance);
+                _local.setEstimatedDistance(next, estimatedDistance);
+                _local.setParent(next, current);
+                if (state == NodeStore.OPEN) {
+                    _localOpen.decreaseKey(next);
+                } else {
+                    _local.setState(next, NodeStore.OPEN);
+                    _localOpen.add(next);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the distances found by the last searchCluster() to some cells of the cluster
+     * @param cluster - The cluster searched
+     * @param cells - The cells
+     * @return distance to each cell, INFINITE if it wasn't reached
+     */
+    private int[] localDistances(int cluster, int[] cells) {
+        int[] distances = new int[cells.length];
+        for (int i = 0; i < cells.length; i++) {
+            distances[i] = localDistance(cluster, cells[i]);
+        }
+        return distances;
+    }
+
+    /**
+     * Get the distance found by the last searchCluster() to a cell of the cluster
+     * @param cluster - The cluster searched
+     * @param cell - The cell
+     * @return distance, INFINITE if it wasn't reached
+     */
+    private int localDistance(int cluster, int cell) {
+        int local = toLocal(cluster, cell);
+        return _local.getState(local) == NodeStore.CLOSED ? _local.getDistance(local) : INFINITE;
+    }
+
+    /**
+     * Get a cluster, building it if it isn't built
+     * @param cluster - The index of the cluster
+     * @return cluster
+     */
+    private Cluster getCluster(int cluster) {
+        if (_clusters[cluster] == null) {
+            _clusters[cluster] = buildCluster(cluster);
+            _clusterBuildCount++;
+        }
+        return _clusters[cluster];
+    }
+
+    /**
+     * Find the entrances of a cluster and the distances between them
+     * @param cluster - The index of the cluster
+     * @return cluster
+     */
+    private Cluster buildCluster(int cluster) {
+        int clusterRow = cluster / _clustersWide;
+        int clusterCol = cluster % _clustersWide;
+        int top = clusterRow * _clusterSize;
+        int left = clusterCol * _clusterSize;
+        int bottom = Math.min(top + _clusterSize, _grid.getHeight()) - 1;
+        int right = Math.min(left + _clusterSize, _grid.getWidth()) - 1;
+
+        // the transitions across each side and corner, as found from the upper/left cluster
+        ArrayList<int[]> transitions = new ArrayList<int[]>();
+        if (clusterRow > 0) {
+            addSideTransitions(top - 1, left, 0, 1, 1, 0, right - left + 1, transitions);
+        }
+        if (bottom < _grid.getHeight() - 1) {
+            addSideTransitions(bottom, left, 0, 1, 1, 0, right - left + 1, transitions);
+        }
+        if (clusterCol > 0) {
+            addSideTransitions(top, left - 1, 1, 0, 0, 1, bottom - top + 1, transitions);
+        }
+        if (right < _grid.getWidth() - 1) {
+            addSideTransitions(top, right, 1, 0, 0, 1, bottom - top + 1, transitions);
+        }
+        addCornerTransitions(top - 1, left - 1, transitions);
+        addCornerTransitions(top - 1, right, transitions);
+        addCornerTransitions(bottom, left - 1, transitions);
+        addCornerTransitions(bottom, right, transitions);
+
+        // the entrances are the ends of the transitions within this cluster
+        ArrayList<Integer> cells = new ArrayList<Integer>();
+        ArrayList<ArrayList<int[]>> crossings = new ArrayList<ArrayList<int[]>>();
+        for (int[] transition : transitions) {
+            for (int end = 0; end < 2; end++) {
+                int cell = transition[end];
+                if (clusterOf(cell) != cluster) {
+                    continue;
+                }
+                int node = cells.indexOf(cell);
+                if (node < 0) {
+                    node = cells.size();
+                    cells.add(cell);
+                    crossings.add(new ArrayList<int[]>());
+                }
+                crossings.get(node).add(new int[] {transition[1 - end], transition[2]});
+            }
+        }
+
+        Cluster result = new Cluster(cells.size());
+        for (int i = 0; i < cells.size(); i++) {
+            result._cells[i] = cells.get(i);
+            result._crossingCells[i] = new int[crossings.get(i).size()];
+            result._crossingCosts[i] = new int[crossings.get(i).size()];
+            for (int j = 0; j < crossings.get(i).size(); j++) {
+                result._crossingCells[i][j] = crossings.get(i).get(j)[0];
+                result._crossingCosts[i][j] = crossings.get(i).get(j)[1];
+            }
+        }
+
+        // the distance between each pair of entrances within the cluster
+        for (int i = 0; i < result._cells.length; i++) {
+            searchCluster(cluster, result._cells[i], -1);
+            result._distances[i] = localDistances(cluster, result._cells);
+        }
+        return result;
+    }
+
+    /**
+     * Find the transitions across the side between two clusters. Each stretch of
+     * cells that are free on both sides (an entrance) gets a transition in the
+     * middle, or one at each end if it is wide, and diagonal moves that are the
+     * only way across get one of their own
+     * @param row - The row of the first cell on the upper/left side
+     * @param col - The column of the first cell on the upper/left side
+     * @param rowStep - The row step along the side
+     * @param colStep - The column step along the side
+     * @param rowAcross - The row offset to the cell across the side
+     * @param colAcross - The column offset to the cell across the side
+     * @param length - The number of cells along the side
+     * @param transitions - The list to add {cell, cell across, cost} to
+     */
+    private void addSideTransitions(int row, int col, int rowStep, int colStep, int rowAcross, int colAcross,
+            int length, ArrayList<int[]> transitions) {
+        int i = 0;
+        while (i < length) {
+            int r = row + i * rowStep;
+            int c = col + i * colStep;
+
+            if (isFree(r, c) && isFree(r + rowAcross, c + colAcross)) {
+                // find the end of the entrance
+                int last = i;
+                while (last + 1 < length) {
+                    int nextRow = row + (last + 1) * rowStep;
+                    int nextCol = col + (last + 1) * colStep;
+                    if (!isFree(nextRow, nextCol) || !isFree(nextRow + rowAcross, nextCol + colAcross)) {
+                        break;
+                    }
+                    last++;
+                }
+
+                if (last - i + 1 < WIDE_ENTRANCE) {
+                    addTransition(row, col, rowStep, colStep, rowAcross, colAcross, (i + last) / 2, 0, transitions);
+                } else {
+                    addTransition(row, col, rowStep, colStep, rowAcross, colAcross, i, 0, transitions);
+                    addTransition(row, col, rowStep, colStep, rowAcross, colAcross, last, 0, transitions);
+                }
+                i = last + 1;
+                continue;
+            }
+
+            // a diagonal move is the only way across here when both cells it cuts past are blocks
+            if (isFree(r, c) && !isFree(r + rowAcross, c + colAcross)) {
+                for (int shift = -1; shift <= 1; shift += 2) {
+                    if (i + shift >= 0 && i + shift < length
+                            && isFree(r + shift * rowStep + rowAcross, c + shift * colStep + colAcross)
+                            && !isFree(r + shift * rowStep, c + shift * colStep)) {
+                        addTransition(row, col, rowStep, colStep, rowAcross, colAcross, i, shift, transitions);
+                    }
+                }
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Add a transition across the side between two clusters
+     * @param row - The row of the first cell on the upper/left side
+     * @param col - The column of the first cell on the upper/left side
+     * @param rowStep - The row step along the side
+     * @param colStep - The column step along the side
+     * @param rowAcross - The row offset to the cell across the side
+     * @param colAcross - The column offset to the cell across the side
+     * @param index - The position along the side of the upper/left cell
+     * @param shift - The position of the cell across relative to the upper/left cell, -1, 0 or 1
+     * @param transitions - The list to add {cell, cell across, cost} to
+     */
+    private void addTransition(int row, int col, int rowStep, int colStep, int rowAcross, int colAcross,
+            int index, int shift, ArrayList<int[]> transitions) {
+        int width = _grid.getWidth();
+        int r = row + index * rowStep;
+        int c = col + index * colStep;
+        int across = (r + shift * rowStep + rowAcross) * width + c + shift * colStep + colAcross;
+        transitions.add(new int[] {r * width + c, across, shift == 0 ? Grid.MOVE_LATERAL : Grid.MOVE_DIAGONAL});
+    }
+
+    /**
+     * Find the transitions across the corner where four clusters meet, only
+     * needed for a diagonal move when both cells it cuts past are blocks
+     * @param row - The row of the upper left cell of the corner
+     * @param col - The column of the upper left cell of the corner
+     * @param transitions - The list to add {cell, cell across, cost} to
+     */
+    private void addCornerTransitions(int row, int col, ArrayList<int[]> transitions) {
+        if (row < 0 || col < 0 || row + 1 >= _grid.getHeight() || col + 1 >= _grid.getWidth()) {
+            return;
+        }
+
+        int width = _grid.getWidth();
+        if (isFree(row, col) && isFree(row + 1, col + 1) && !isFree(row, col + 1) && !isFree(row + 1, col)) {
+            transitions.add(new int[] {row * width + col, (row + 1) * width + col + 1, Grid.MOVE_DIAGONAL});
+        }
+        if (isFree(row, col + 1) && isFree(row + 1, col) && !isFree(row, col) && !isFree(row + 1, col + 1)) {
+            transitions.add(new int[] {row * width + col + 1, (row + 1) * width + col, Grid.MOVE_DIAGONAL});
+        }
+    }
+
+    /**
+     * Check if a cell is within the grid and not a block
+     * @param row
+     * @param col
+     * @return true if the cell can be moved to
+     */
+    private boolean isFree(int row, int col) {
+        return row >= 0 && row < _grid.getHeight() && col >= 0 && col < _grid.getWidth()
+                && !_grid.isBlocked(row, col);
+    }
+
+    /**
+     * Check if a coordinate is within the grid
+     * @param coord
+     * @return true if the coordinate is within the grid
+     */
+    private boolean isWithinGrid(Coordinate coord) {
+        return coord.getRow() >= 0 && coord.getRow() < _grid.getHeight()
+                && coord.getCol() >= 0 && coord.getCol() < _grid.getWidth();
+    }
+
+    /**
+     * Get the cluster of a cell
+     * @param cell
+     * @return cluster index
+     */
+    private int clusterOf(int cell) {
+        return clusterOf(cell / _grid.getWidth(), cell % _grid.getWidth());
+    }
+
+    /**
+     * Get the cluster of a cell
+     * @param row
+     * @param col
+     * @return cluster index
+     */
+    private int clusterOf(int row, int col) {
+        return (row / _clusterSize) * _clustersWide + col / _clusterSize;
+    }
+
+    /**
+     * Get the cell id within _local of a cell of a cluster
+     * @param cluster
+     * @param cell
+     * @return local cell id
+     */
+    private int toLocal(int cluster, int cell) {
+        int row = cell / _grid.getWidth() - (cluster / _clustersWide) * _clusterSize;
+        int col = cell % _grid.getWidth() - (cluster % _clustersWide) * _clusterSize;
+        return _local.cell(row, col);
+    }
+
+    /**
+     * Get the diagonal distance between two cells, ignoring blocks
+     * @param from
+     * @param to
+     * @return estimated distance
+     */
+    private int estimate(int from, int to) {
+        int width = _grid.getWidth();
+        int rows = Math.abs(from / width - to / width);
+        int cols = Math.abs(from % width - to % width);
+        return Grid.MOVE_DIAGONAL * Math.min(rows, cols) + Grid.MOVE_LATERAL * Math.abs(rows - cols);
+    }
+
+    @Override
+    public String toString() {
+        return "Hierarchical (HPA*)";
+    }
+
+    /**
+     * The entrances of a cluster, the distances between them within the
+     * cluster, and the moves across to the next clusters
+     */
+    private static class Cluster {
+        private int[] _cells;
+        private int[][] _distances;
+        private int[][] _crossingCells;
+        private int[][] _crossingCosts;
+
+        public Cluster(int nodes) {
+            _cells = new int[nodes];
+            _distances = new int[nodes][];
+            _crossingCells = new int[nodes][];
+            _crossingCosts = new int[nodes][];
+        }
+
+        /**
+         * Get the index of the entrance at a cell
+         * @param cell
+         * @return node index, -1 if the cell isn't an entrance
+         */
+        public int indexOf(int cell) {
+            for (int i = 0; i < _cells.length; i++) {
+                if (_cells[i] == cell) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * A node of the abstract graph reached by a search: the start, the end or an entrance
+     */
+    private static class State {
+        private int _cell;
+        private int _cluster;
+        private int _node;          // index of the entrance within its cluster, -1 for the start and end
+        private int _distance = INFINITE;
+        private State _parent = null;
+        private boolean _crossing = false; // true if reached by a move across from another cluster
+        private int _firstStep = -1;       // the first move off a blocked start, if it left the start's cluster
+        private boolean _closed = false;
+
+        public State(int cell, int cluster, int node) {
+            _cell = cell;
+            _cluster = cluster;
+            _node = node;
+        }
+    }
+
+    /**
+     * A state in the open queue with the estimated distance it was added with,
+     * entries left behind by a later, smaller distance are skipped
+     */
+    private static class QueueEntry implements Comparable<QueueEntry> {
+        private State _state;
+        private int _estimatedDistance;
+
+        public QueueEntry(State state, int estimatedDistance) {
+            _state = state;
+            _estimatedDistance = estimatedDistance;
+        }
+
+        @Override
+        public int compareTo(QueueEntry other) {
+            if (_estimatedDistance != other._estimatedDistance) {
+                return _estimatedDistance < other._estimatedDistance ? -1 : 1;
+            }
+            // prefer the state furthest along the path
+            if (_state._distance != other._state._distance) {
+                return _state._distance > other._state._distance ? -1 : 1;
+            }
+            return 0;
+        }
+    }
+}
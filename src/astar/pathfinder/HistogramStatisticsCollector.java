@@ -0,0 +1,123 @@
+package astar.pathfinder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Collector keeping a LatencyHistogram of search times and totals of the
+ * search counters per implementation, in memory. Thread safe
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public class HistogramStatisticsCollector implements StatisticsCollector {
+    private HashMap<String, LatencyHistogram> _histograms = new HashMap<String, LatencyHistogram>();
+    private HashMap<String, long[]> _totals = new HashMap<String, long[]>();
+
+    // indexes into the totals of an implementation
+    private static final int EXPANDED = 0;
+    private static final int GENERATED = 1;
+    private static final int HEAP_OPERATIONS = 2;
+    private static final int HEURISTIC_EVALUATIONS = 3;
+
+    @Override
+    public Object searchStarted() {
+        return this;
+    }
+
+    @Override
+    public synchronized void collect(SearchStatistics statistics, Object search) {
+        String implementation = statistics.getImplementation();
+        LatencyHistogram histogram = _histograms.get(implementation);
+        long[] totals = _totals.get(implementation);
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            totals = new long[4];
+            _histograms.put(implementation, histogram);
+            _totals.put(implementation, totals);
+        }
+
+        histogram.record(statistics.getNanos());
+        totals[EXPANDED] += statistics.getExpanded();
+        totals[GENERATED] += statistics.getGenerated();
+        totals[HEAP_OPERATIONS] += statistics.getHeapOperations();
+        totals[HEURISTIC_EVALUATIONS] += statistics.getHeuristicEvaluations();
+    }
+
+    /**
+     * Get the names of the implementations that statistics were collected for
+     * @return implementation names
+     */
+    public synchronized List<String> getImplementations() {
+        return new ArrayList<String>(_histograms.keySet());
+    }
+
+    /**
+     * Get a copy of the search time histogram of an implementation
+     * @param implementation - The name of the implementation
+     * @return histogram, empty if no statistics were collected for the implementation
+     */
+    public synchronized LatencyHistogram getHistogram(String implementation) {
+        LatencyHistogram copy = new LatencyHistogram();
+        if (_histograms.containsKey(implementation)) {
+            copy.add(_histograms.get(implementation));
+        }
+        return copy;
+    }
+
+    /**
+     * Get the total number of nodes an implementation expanded
+     * @param implementation - The name of the implementation
+     * @return expanded count
+     */
+    public synchronized long getExpanded(String implementation) {
+        return getTotal(implementation, EXPANDED);
+    }
+
+    /**
+     * Get the total number of successor nodes an implementation generated
+     * @param implementation - The name of the implementation
+     * @return generated count
+     */
+    public synchronized long getGenerated(String implementation) {
+        return getTotal(implementation, GENERATED);
+    }
+
+    /**
+     * Get the total number of open list operations of an implementation
+     * @param implementation - The name of the implementation
+     * @return heap operation count
+     */
+    public synchronized long getHeapOperations(String implementation) {
+        return getTotal(implementation, HEAP_OPERATIONS);
+    }
+
+    /**
+     * Get the total number of heuristic calls of an implementation
+     * @param implementation - The name of the implementation
+     * @return heuristic evaluation count
+     */
+    public synchronized long getHeuristicEvaluations(String implementation) {
+        return getTotal(implementation, HEURISTIC_EVALUATIONS);
+    }
+
+    /**
+     * Remove everything collected
+     */
+    public synchronized void clear() {
+        _histograms.clear();
+        _totals.clear();
+    }
+
+    /**
+     * Get one of the totals of an implementation
+     * @param implementation
+     * @param index
+     * @return total, 0 if no statistics were collected for the implementation
+     */
+    private long getTotal(String implementation, int index) {
+        long[] totals = _totals.get(implementation);
+        return totals == null ? 0 : totals[index];
+    }
+}
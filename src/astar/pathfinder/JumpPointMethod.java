@@ -0,0 +1,169 @@
+package astar.pathfinder;
+
+import astar.info.Grid;
+
+/**
+ * Jump Point Search, using the Diagonal method heuristic. Instead of opening
+ * every adjacent cell, the search jumps in straight and diagonal lines and only
+ * opens the cells where a path could need to turn (jump points). Paths have
+ * the same distance as the Diagonal method.
+ *
+ * The savings depend on the map: with no blocks a search expands only the
+ * jump points on its way, on room maps it expands a fraction of the nodes the
+ * Diagonal method does, but every block scattered next to a jump line forces
+ * a jump point, so on randomly blocked grids it expands about half as many.
+ *
+ * Diagonal moves between two blocks are allowed, as in the other methods.
+ * The forced neighbour rules are the ones for that case, a block beside the
+ * direction of travel rather than behind it.
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public class JumpPointMethod extends DiagonalMethod {
+    private int _targetRow;
+    private int _targetCol;
+
+    @Override
+    public boolean supportsBidirectional() {
+        // the jump points of the two directions aren't the same cells, so the searches
+        //   can jump past each other without meeting
+        return false;
+    }
+
+    @Override
+    protected void updateNodes() {
+        NodeStore nodes = getNodes();
+        int cell = getCurrentCell();
+        int parent = nodes.getParent(cell);
+        int row = nodes.row(cell);
+        int col = nodes.col(cell);
+
+        _targetRow = getTarget().getRow();
+        _targetCol = getTarget().getCol();
+
+        // the start node has no direction, so jump in every direction that can be moved to
+        if (parent == NodeStore.NO_PARENT) {
+            int mask = _grid.getNeighbourMask(row, col);
+            for (int i = 0; i < Grid.NEIGHBOUR_ROW_OFFSETS.length; i++) {
+                if ((mask & (1 << i)) != 0) {
+                    jumpFrom(row, col, Grid.NEIGHBOUR_ROW_OFFSETS[i], Grid.NEIGHBOUR_COL_OFFSETS[i]);
+                }
+            }
+            return;
+        }
+
+        // otherwise only follow the direction of travel and any forced neighbours
+        int rowStep = Integer.signum(row - nodes.row(parent));
+        int colStep = Integer.signum(col - nodes.col(parent));
+
+        if (rowStep != 0 && colStep != 0) {
+            jumpFrom(row, col, 0, colStep);
+            jumpFrom(row, col, rowStep, 0);
+            jumpFrom(row, col, rowStep, colStep);
+            if (!isOpen(row, col - colStep)) {
+                jumpFrom(row, col, rowStep, -colStep);
+            }
+            if (!isOpen(row - rowStep, col)) {
+                jumpFrom(row, col, -rowStep, colStep);
+            }
+        } else if (rowStep != 0) {
+            jumpFrom(row, col, rowStep, 0);
+            if (!isOpen(row, col - 1)) {
+                jumpFrom(row, col, rowStep, -1);
+            }
+            if (!isOpen(row, col + 1)) {
+                jumpFrom(row, col, rowStep, 1);
+            }
+        } else {
+            jumpFrom(row, col, 0, colStep);
+            if (!isOpen(row - 1, col)) {
+                jumpFrom(row, col, -1, colStep);
+            }
+            if (!isOpen(row + 1, col)) {
+                jumpFrom(row, col, 1, colStep);
+            }
+        }
+    }
+
+    /**
+     * Jump from a cell in a direction and open the jump point found, if any
+     * @param row - The row of the cell to jump from
+     * @param col - The column of the cell to jump from
+     * @param rowStep - The row direction, -1, 0 or 1
+     * @param colStep - The column direction, -1, 0 or 1
+     */
+    private void jumpFrom(int row, int col, int rowStep, int colStep) {
+        int steps = jump(row, col, rowStep, colStep);
+        if (steps > 0) {
+            int moveCost = (rowStep != 0 && colStep != 0) ? Grid.MOVE_DIAGONAL : Grid.MOVE_LATERAL;
+            openNode(row + rowStep * steps, col + colStep * steps,
+                    getNodes().getDistance(getCurrentCell()) + steps * moveCost);
+        }
+    }
+
+    /**
+     * Move from a cell in a direction until reaching a jump point: the target, a
+     * cell with a forced neighbour, or (moving diagonally) a cell from which a
+     * straight jump finds a jump point
+     * @param row - The row of the cell to jump from
+     * @param col - The column of the cell to jump from
+     * @param rowStep - The row direction, -1, 0 or 1
+     * @param colStep - The column direction, -1, 0 or 1
+     * @return number of steps to the jump point, 0 if a block or the edge of the grid is hit first
+     */
+    private int jump(int row, int col, int rowStep, int colStep) {
+        for (int steps = 1; ; steps++) {
+            row += rowStep;
+            col += colStep;
+
+            if (!isOpen(row, col)) {
+                return 0;
+            }
+            if (row == _targetRow && col == _targetCol) {
+                return steps;
+            }
+
+            if (rowStep != 0 && colStep != 0) {
+                // diagonal: forced neighbours behind a block on either side
+                if ((!isOpen(row, col - colStep) && isOpen(row + rowStep, col - colStep))
+                        || (!isOpen(row - rowStep, col) && isOpen(row - rowStep, col + colStep))) {
+                    return steps;
+                }
+
+                // a straight jump from here reaching a jump point makes this a jump point
+                if (jump(row, col, rowStep, 0) > 0 || jump(row, col, 0, colStep) > 0) {
+                    return steps;
+                }
+            } else if (rowStep != 0) {
+                // vertical: forced neighbours next to a block on the left or right
+                if ((!isOpen(row, col - 1) && isOpen(row + rowStep, col - 1))
+                        || (!isOpen(row, col + 1) && isOpen(row + rowStep, col + 1))) {
+                    return steps;
+                }
+            } else {
+                // horizontal: forced neighbours next to a block above or below
+                if ((!isOpen(row - 1, col) && isOpen(row - 1, col + colStep))
+                        || (!isOpen(row + 1, col) && isOpen(row + 1, col + colStep))) {
+                    return steps;
+                }
+            }
+        }
+    }
+
+    /**
+     * Check if a cell is within the grid and not a block
+     * @param row
+     * @param col
+     * @return true if the cell can be moved to
+     */
+    private boolean isOpen(int row, int col) {
+        return row >= 0 && row < _grid.getHeight() && col >= 0 && col < _grid.getWidth()
+                && !_grid.isBlocked(row, col);
+    }
+
+    @Override
+    public String toString() {
+        return "Jump Point Search";
+    }
+}
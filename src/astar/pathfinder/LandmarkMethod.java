@@ -0,0 +1,391 @@
+package astar.pathfinder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import astar.info.Coordinate;
+import astar.info.Grid;
+
+/**
+ * The Landmark (ALT) method. The exact distance from every cell to a few
+ * landmark cells is precomputed, and by the triangle inequality the distance
+ * between two cells is at least the difference of their distances to any
+ * landmark. On maps with lots of walls this is much closer to the real
+ * distance than the closed-form heuristics, which is never used less than
+ * the Diagonal method's estimate.
+ *
+ * The distances are built in parallel (a FlowField per landmark) the first
+ * time a grid is searched, and again whenever its blocks have changed. They
+ * are stored interleaved per cell, so an estimate reads one short run of the
+ * table for each of the two cells, as 16 bit values unless some distance is
+ * too long to fit (eg. in large mazes), when 32 bit values are used instead.
+ * Engines that call the heuristic without findPath() (eg. AnytimeSearch)
+ * should call precompute() after the grid changes.
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public class LandmarkMethod extends Astar {
+    /**
+     * Number of landmarks placed when none are set
+     */
+    public static final int DEFAULT_LANDMARK_COUNT = 8;
+
+    // value in the 16 bit table of a cell that can't reach the landmark
+    private static final char SHORT_UNREACHABLE = Character.MAX_VALUE;
+
+    private int _landmarkCount = DEFAULT_LANDMARK_COUNT;
+    private List<Coordinate> _landmarks = null;   // set by the caller, null to place them automatically
+    private Coordinate[] _tableLandmarks = null;  // the landmarks of the table
+    private char[] _shortTable = null;            // distance from cell to landmark, at cell * landmarks + landmark
+    private int[] _table = null;                  // the same, if some distance doesn't fit in 16 bits (-1 if unreachable)
+    private Grid _tableGrid = null;               // the grid the table was last checked against
+    private long[] _tableBlocks = null;           // the blocks the table was built from
+
+    /**
+     * Constructor
+     */
+    public LandmarkMethod() {}
+
+    /**
+     * Constructor
+     * @param landmarkCount - The number of landmarks to place
+     */
+    public LandmarkMethod(int landmarkCount) {
+        _landmarkCount = landmarkCount;
+    }
+
+    /**
+     * Set the number of landmarks to place around the edge of the grid, used
+     * unless the landmarks are set with setLandmarks()
+     * @param landmarkCount
+     */
+    public void setLandmarkCount(int landmarkCount) {
+        _landmarkCount = landmarkCount;
+        _tableLandmarks = null;
+    }
+
+    /**
+     * Set the cells to use as landmarks (blocks are skipped)
+     * @param landmarks - The landmarks, null to place them automatically
+     */
+    public void setLandmarks(List<Coordinate> landmarks) {
+        _landmarks = landmarks == null ? null : new ArrayList<Coordinate>(landmarks);
+        _tableLandmarks = null;
+    }
+
+    /**
+     * Get the landmarks used for the current table
+     * @return landmarks, empty if the table hasn't been built yet
+     */
+    public List<Coordinate> getLandmarks() {
+        List<Coordinate> landmarks = new ArrayList<Coordinate>();
+        if (_tableLandmarks != null) {
+            for (Coordinate landmark : _tableLandmarks) {
+                landmarks.add(landmark.clone());
+            }
+        }
+        return landmarks;
+    }
+
+    /**
+     * Check if the table is up to date for the set grid. The table is kept for
+     * another grid with the same blocks (eg. a copy of the grid)
+     * @return true if it doesn't need building again
+     */
+    public boolean isPrecomputed() {
+        if (_tableLandmarks == null || _grid == null || _tableBlocks.length != _grid.getHeight() * _grid.getWordsPerRow()
+                || (_shortTable != null ? _shortTable.length : _table.length)
+                        != _grid.getWidth() * _grid.getHeight() * _tableLandmarks.length) {
+            return false;
+        }
+
+        // blocks could have changed since the table was built
+        for (int row = 0; row < _grid.getHeight(); row++) {
+            for (int word = 0; word < _grid.getWordsPerRow(); word++) {
+                if (_tableBlocks[row * _grid.getWordsPerRow() + word] != _grid.getBlockWord(row, word)) {
+                    return false;
+                }
+            }
+        }
+        _tableGrid = _grid;
+        return true;
+    }
+
+    /**
+     * Build the table of distances to the landmarks for the set grid, one
+     * landmark per thread (up to the number of processors)
+     * @throws Exception
+     */
+    public void precompute() throws Exception {
+        // grid should not be null
+        if (_grid == null) {
+            System.out.println("LandmarkMethod.precompute called without grid being set first");
+            return;
+        }
+
+        final Grid grid = _grid;
+        List<Coordinate> landmarks = _landmarks != null ? openLandmarks(grid, _landmarks) : placeLandmarks(grid, _landmarkCount);
+
+        // build the fields on daemon threads, so a failed build doesn't keep the JVM alive
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(landmarks.size(), Runtime.getRuntime().availableProcessors())),
+                new ThreadFactory() {
+                    private AtomicInteger _count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "astar-landmark-" + _count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+
+        // the grid builds its neighbour masks on first use, do that before the threads share it
+        if (grid.getWidth() > 0 && grid.getHeight() > 0) {
+            grid.getNeighbourMask(0, 0);
+        }
+
+        int count = landmarks.size();
+        int cells = grid.getWidth() * grid.getHeight();
+        int[] table = new int[cells * count];
+        int longest = 0;
+        try {
+            List<Future<FlowField>> futures = new ArrayList<Future<FlowField>>();
+            for (final Coordinate landmark : landmarks) {
+                futures.add(executor.submit(new Callable<FlowField>() {
+                    @Override
+                    public FlowField call() throws Exception {
+                        return new FlowField(grid, landmark);
+                    }
+                }));
+            }
+
+            // copy each field into its column of the table
+            for (int l = 0; l < count; l++) {
+                FlowField field = futures.get(l).get();
+                for (int cell = 0; cell < cells; cell++) {
+                    int distance = field.getDistance(cell / grid.getWidth(), cell % grid.getWidth());
+                    table[cell * count + l] = distance;
+                    longest = Math.max(longest, distance);
+                }
+            }
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof Exception) {
+                throw (Exception) ex.getCause();
+            }
+            throw ex;
+        } finally {
+            executor.shutdown();
+        }
+
+        // keep the blocks the table was built from, to notice when they change
+        long[] blocks = new long[grid.getHeight() * grid.getWordsPerRow()];
+        for (int row = 0; row < grid.getHeight(); row++) {
+            for (int word = 0; word < grid.getWordsPerRow(); word++) {
+                blocks[row * grid.getWordsPerRow() + word] = grid.getBlockWord(row, word);
+            }
+        }
+
+        // keep half the memory if every distance fits in 16 bits
+        _shortTable = null;
+        _table = null;
+        if (longest < SHORT_UNREACHABLE) {
+            _shortTable = new char[table.length];
+            for (int i = 0; i < table.length; i++) {
+                _shortTable[i] = table[i] < 0 ? SHORT_UNREACHABLE : (char) table[i];
+            }
+        } else {
+            _table = table;
+        }
+
+        _tableLandmarks = landmarks.toArray(new Coordinate[count]);
+        _tableGrid = grid;
+        _tableBlocks = blocks;
+    }
+
+    @Override
+    public ArrayList<Coordinate> findPath(Coordinate start, Coordinate end) throws Exception {
+        // build the table before the search, not while timing it
+        prepareHeuristic();
+        return super.findPath(start, end);
+    }
+
+    @Override
+    void prepareHeuristic() throws Exception {
+        if (_grid != null && !isPrecomputed()) {
+            precompute();
+        }
+    }
+
+    @Override
+    void shareHeuristic(Astar prepared) {
+        // the table isn't changed once it's built, so it can be read by several threads
+        LandmarkMethod other = (LandmarkMethod) prepared;
+        _tableLandmarks = other._tableLandmarks;
+        _shortTable = other._shortTable;
+        _table = other._table;
+        _tableBlocks = other._tableBlocks;
+        _tableGrid = other._tableGrid == _grid ? _grid : null;
+    }
+
+    @Override
+    protected int estimateDistance(Coordinate coord) {
+        Coordinate target = getTarget();
+
+        // the Diagonal method's estimate, for when no landmark does better (or the
+        //   table hasn't been checked against the grid yet)
+        int x = Math.abs(coord.getRow() - target.getRow());
+        int y = Math.abs(coord.getCol() - target.getCol());
+        int estimate = Grid.MOVE_DIAGONAL * Math.min(x, y) + Grid.MOVE_LATERAL * Math.abs(x - y);
+        if (_tableLandmarks == null || _tableGrid != _grid) {
+            return estimate;
+        }
+
+        // a block can be moved off but not onto, so between a block and another cell
+        //   only the difference in the direction of the move is a lower bound
+        int count = _tableLandmarks.length;
+        int coordIndex = (coord.getRow() * _grid.getWidth() + coord.getCol()) * count;
+        int targetIndex = (target.getRow() * _grid.getWidth() + target.getCol()) * count;
+        boolean coordBlocked = _grid.isBlocked(coord.getRow(), coord.getCol());
+        boolean targetBlocked = _grid.isBlocked(target.getRow(), target.getCol());
+
+        for (int l = 0; l < count; l++) {
+            int coordDistance = landmarkDistance(coordIndex + l);
+            int targetDistance = landmarkDistance(targetIndex + l);
+            if (coordDistance < 0 || targetDistance < 0) {
+                continue;
+            }
+
+            int difference;
+            if (targetBlocked) {
+                difference = targetDistance - coordDistance;
+            } else if (coordBlocked) {
+                difference = coordDistance - targetDistance;
+            } else {
+                difference = Math.abs(coordDistance - targetDistance);
+            }
+            estimate = Math.max(estimate, difference);
+        }
+        return estimate;
+    }
+
+    /**
+     * Get an entry of the table
+     * @param index - cell * landmarks + landmark
+     * @return distance from the cell to the landmark, -1 if it can't be reached
+     */
+    private int landmarkDistance(int index) {
+        if (_shortTable != null) {
+            char distance = _shortTable[index];
+            return distance == SHORT_UNREACHABLE ? -1 : distance;
+        }
+        return _table[index];
+    }
+
+    /**
+     * Place landmarks evenly around the edge of the grid, each moved in towards
+     * the center until it's on a cell that isn't a block
+     * @param grid
+     * @param count - The number of landmarks to place
+     * @return landmarks, fewer than count if some couldn't be placed or fell on the same cell
+     */
+    private static List<Coordinate> placeLandmarks(Grid grid, int count) {
+        List<Coordinate> landmarks = new ArrayList<Coordinate>();
+        int width = grid.getWidth();
+        int height = grid.getHeight();
+        int perimeter = 2 * (width + height);
+
+        for (int i = 0; i < count; i++) {
+            // walk clockwise round the edge from the top left corner
+            int position = (int) ((long) perimeter * i / count);
+            int row;
+            int col;
+            if (position < width) {
+                row = 0;
+                col = position;
+            } else if (position < width + height) {
+                row = position - width;
+                col = width - 1;
+            } else if (position < 2 * width + height) {
+                row = height - 1;
+                col = width - 1 - (position - width - height);
+            } else {
+                row = height - 1 - (position - 2 * width - height);
+                col = 0;
+            }
+
+            Coordinate landmark = moveInwards(grid, Math.min(row, height - 1), Math.min(col, width - 1));
+            if (landmark != null && !contains(landmarks, landmark)) {
+                landmarks.add(landmark);
+            }
+        }
+        return landmarks;
+    }
+
+    /**
+     * Find the first cell that isn't a block on the line from a cell to the center of the grid
+     * @param grid
+     * @param row
+     * @param col
+     * @return coordinate, null if every cell on the line is a block
+     */
+    private static Coordinate moveInwards(Grid grid, int row, int col) {
+        int centerRow = grid.getHeight() / 2;
+        int centerCol = grid.getWidth() / 2;
+        int steps = Math.max(Math.abs(centerRow - row), Math.abs(centerCol - col));
+        for (int step = 0; step <= steps; step++) {
+            int r = steps == 0 ? row : row + (centerRow - row) * step / steps;
+            int c = steps == 0 ? col : col + (centerCol - col) * step / steps;
+            if (!grid.isBlocked(r, c)) {
+                return new Coordinate(r, c);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the landmarks set by the caller that are within the grid and not blocks
+     * @param grid
+     * @param landmarks
+     * @return usable landmarks
+     */
+    private static List<Coordinate> openLandmarks(Grid grid, List<Coordinate> landmarks) {
+        List<Coordinate> open = new ArrayList<Coordinate>();
+        for (Coordinate landmark : landmarks) {
+            if (landmark.getRow() >= 0 && landmark.getRow() < grid.getHeight() && landmark.getCol() >= 0
+                    && landmark.getCol() < grid.getWidth() && !grid.isBlocked(landmark.getRow(), landmark.getCol())
+                    && !contains(open, landmark)) {
+                open.add(landmark.clone());
+            }
+        }
+        return open;
+    }
+
+    /**
+     * Check if a list holds a coordinate
+     * @param list
+     * @param coord
+     * @return true if an equal coordinate is in the list
+     */
+    private static boolean contains(List<Coordinate> list, Coordinate coord) {
+        for (Coordinate other : list) {
+            if (other.isEqual(coord)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "Landmark Method";
+    }
+}
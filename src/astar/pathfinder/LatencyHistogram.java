@@ -0,0 +1,122 @@
+package astar.pathfinder;
+
+/**
+ * Histogram of search times with buckets that grow with the time, each power
+ * of two split into SUB_BUCKETS buckets, so percentiles are accurate to within
+ * about 1 / SUB_BUCKETS of the value using a fixed, small amount of memory.
+ * Not thread safe
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public class LatencyHistogram {
+    // must be a power of two
+    private static final int SUB_BUCKETS = 16;
+    private static final int SUB_BUCKET_BITS = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+
+    private long[] _counts = new long[(64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS];
+    private long _count = 0;
+    private long _total = 0;
+    private long _max = 0;
+
+    /**
+     * Record a time
+     * @param nanos - The time in ns
+     */
+    public void record(long nanos) {
+        nanos = Math.max(nanos, 0);
+        _counts[bucket(nanos)]++;
+        _count++;
+        _total += nanos;
+        _max = Math.max(_max, nanos);
+    }
+
+    /**
+     * Add every time recorded by another histogram
+     * @param other
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < _counts.length; i++) {
+            _counts[i] += other._counts[i];
+        }
+        _count += other._count;
+        _total += other._total;
+        _max = Math.max(_max, other._max);
+    }
+
+    /**
+     * Get the number of times recorded
+     * @return count
+     */
+    public long getCount() {
+        return _count;
+    }
+
+    /**
+     * Get the mean of the times recorded
+     * @return mean time in ns, 0 if nothing was recorded
+     */
+    public double getMean() {
+        return _count == 0 ? 0 : (double) _total / _count;
+    }
+
+    /**
+     * Get the largest time recorded
+     * @return time in ns
+     */
+    public long getMax() {
+        return _max;
+    }
+
+    /**
+     * Get the time below which a percentage of the recorded times fall
+     * @param percentile - The percentage, 0 to 100
+     * @return upper bound of the bucket holding the percentile in ns (never more than getMax()),
+     *         0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        if (_count == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * _count));
+        long seen = 0;
+        for (int i = 0; i < _counts.length; i++) {
+            seen += _counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), _max);
+            }
+        }
+        return _max;
+    }
+
+    /**
+     * Get the bucket a time falls in
+     * @param nanos - The time, not negative
+     * @return bucket index
+     */
+    private static int bucket(long nanos) {
+        // small values get a bucket each, after that each power of two is split evenly
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (nanos >>> shift) - SUB_BUCKETS;
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Get the largest time that falls in a bucket
+     * @param bucket - The bucket index
+     * @return time in ns
+     */
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long subBucket = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
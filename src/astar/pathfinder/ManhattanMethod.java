@@ -15,7 +15,7 @@ public class ManhattanMethod extends Astar {
 
     @Override
     protected int estimateDistance(Coordinate coord) {
-        return (Math.abs(coord.getRow() - _grid.getEnd().getRow()) + Math.abs(coord.getCol() - _grid.getEnd().getCol())) * Grid.MOVE_LATERAL;
+        return (Math.abs(coord.getRow() - getTarget().getRow()) + Math.abs(coord.getCol() - getTarget().getCol())) * Grid.MOVE_LATERAL;
     }
 
     @Override
@@ -13,8 +13,8 @@ public class MyMethod extends Astar {
 
     @Override
     protected int estimateDistance(Coordinate coord) {
-    	int x = Math.abs(coord.getRow() - _grid.getEnd().getRow());
-        int y = Math.abs(coord.getCol() - _grid.getEnd().getCol());
+    	int x = Math.abs(coord.getRow() - getTarget().getRow());
+        int y = Math.abs(coord.getCol() - getTarget().getCol());
         int diff = Math.abs(x - y);
         
         if (diff % 2 == 0) {
@@ -0,0 +1,18 @@
+package astar.pathfinder;
+
+/**
+ * Collector that ignores the statistics, used by Astar unless another is set
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public class NoOpStatisticsCollector implements StatisticsCollector {
+
+    @Override
+    public Object searchStarted() {
+        return null;
+    }
+
+    @Override
+    public void collect(SearchStatistics statistics, Object search) {}
+}
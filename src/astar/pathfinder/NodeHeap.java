@@ -0,0 +1,205 @@
+package astar.pathfinder;
+
+import java.util.Arrays;
+
+/**
+ * Indexed binary min-heap of cells ordered by their estimated distance in a
+ * NodeStore. The heap keeps track of the slot every cell occupies, so the
+ * cell with the smallest estimated distance can be removed and a cell's
+ * estimated distance can be lowered in O(log n).
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public class NodeHeap implements OpenList {
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private NodeStore _nodes;
+    private int[] _heap;
+    private int[] _heapIndex;
+    private int _size = 0;
+
+    /**
+     * Constructor
+     * @param nodes - The store holding the estimated distances of the cells
+     */
+    public NodeHeap(NodeStore nodes) {
+        _nodes = nodes;
+        _heap = new int[DEFAULT_CAPACITY];
+        _heapIndex = new int[Math.max(nodes.getCellCount(), DEFAULT_CAPACITY)];
+    }
+
+    /**
+     * Get the number of cells in the heap
+     * @return size
+     */
+    public int size() {
+        return _size;
+    }
+
+    /**
+     * Check if the heap is empty
+     * @return true if there are no cells in the heap
+     */
+    public boolean isEmpty() {
+        return _size == 0;
+    }
+
+    /**
+     * Add a cell to the heap
+     * @param cell - The cell to add
+     */
+    public void add(int cell) {
+        // grow the backing array if it is full
+        if (_size == _heap.length) {
+            int[] larger = new int[_heap.length * 2];
+            System.arraycopy(_heap, 0, larger, 0, _size);
+            _heap = larger;
+        }
+
+        // a sparse store hands out more cell ids as the search grows
+        if (cell >= _heapIndex.length) {
+            _heapIndex = Arrays.copyOf(_heapIndex, Math.max(cell + 1, _heapIndex.length * 2));
+        }
+
+        // place the cell at the bottom of the heap and move it up into position
+        _heap[_size] = cell;
+        _size++;
+        siftUp(_size - 1);
+    }
+
+    /**
+     * Get the cell with the smallest estimated distance without removing it
+     * @return smallest cell, -1 if the heap is empty
+     */
+    public int peek() {
+        if (_size == 0) {
+            return -1;
+        }
+        return _heap[0];
+    }
+
+    /**
+     * Remove and return the cell with the smallest estimated distance
+     * @return smallest cell, -1 if the heap is empty
+     */
+    public int poll() {
+        if (_size == 0) {
+            return -1;
+        }
+
+        int smallest = _heap[0];
+        _size--;
+
+        // move the last cell to the top and let it sink back into position
+        if (_size > 0) {
+            _heap[0] = _heap[_size];
+            siftDown(0);
+        }
+
+        return smallest;
+    }
+
+    /**
+     * Restore the heap order after a cell's estimated distance was lowered
+     * @param cell - The cell whose estimated distance was lowered
+     */
+    public void decreaseKey(int cell) {
+        siftUp(_heapIndex[cell]);
+    }
+
+    /**
+     * Get the cell at a position of the heap's backing array, to visit every cell in the heap
+     * @param index - The position, 0 to size() - 1
+     * @return cell
+     */
+    public int get(int index) {
+        return _heap[index];
+    }
+
+    /**
+     * Restore the heap order after the estimated distances of any of the cells changed
+     */
+    public void rebuild() {
+        for (int i = (_size >>> 1) - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    /**
+     * Remove all cells from the heap
+     */
+    public void clear() {
+        _size = 0;
+    }
+
+    /**
+     * Move the cell at an index up until its parent is not larger
+     * @param index
+     */
+    private void siftUp(int index) {
+        int cell = _heap[index];
+
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!isSmaller(cell, _heap[parent])) {
+                break;
+            }
+
+            // pull the parent down into the hole
+            _heap[index] = _heap[parent];
+            _heapIndex[_heap[index]] = index;
+            index = parent;
+        }
+
+        _heap[index] = cell;
+        _heapIndex[cell] = index;
+    }
+
+    /**
+     * Move the cell at an index down until neither child is smaller
+     * @param index
+     */
+    private void siftDown(int index) {
+        int cell = _heap[index];
+        int half = _size >>> 1;
+
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+
+            // pick the smaller of the two children
+            if (right < _size && isSmaller(_heap[right], _heap[child])) {
+                child = right;
+            }
+            if (!isSmaller(_heap[child], cell)) {
+                break;
+            }
+
+            // pull the child up into the hole
+            _heap[index] = _heap[child];
+            _heapIndex[_heap[index]] = index;
+            index = child;
+        }
+
+        _heap[index] = cell;
+        _heapIndex[cell] = index;
+    }
+
+    /**
+     * Compare two cells by estimated distance, breaking ties in favour of the
+     * cell with the smaller distance so that cells closer to the start are
+     * expanded first (as the old first-found linear scan tended to do)
+     * @param a
+     * @param b
+     * @return true if a should be removed from the heap before b
+     */
+    private boolean isSmaller(int a, int b) {
+        int estimatedA = _nodes.getEstimatedDistance(a);
+        int estimatedB = _nodes.getEstimatedDistance(b);
+        if (estimatedA != estimatedB) {
+            return estimatedA < estimatedB;
+        }
+        return _nodes.getDistance(a) < _nodes.getDistance(b);
+    }
+}
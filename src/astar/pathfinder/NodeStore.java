@@ -0,0 +1,397 @@
+package astar.pathfinder;
+
+import java.util.Arrays;
+
+import astar.info.Coordinate;
+import astar.info.Node;
+
+/**
+ * Search state for every cell of a Grid, held in flat arrays indexed by
+ * cell id (row * width + col) instead of one Node object per cell. Checking
+ * whether a cell is open or closed is a single array read, and Node objects
+ * are only built when a caller asks for them.
+ *
+ * Every write to a cell's state stamps it with the current epoch, and cells
+ * stamped with an older epoch read as UNSEEN. Resetting the store between
+ * searches is then just a matter of starting a new epoch.
+ *
+ * A sparse store only holds the cells a search reaches: cell ids are handed
+ * out in the order cells are first asked for (through a hash table from
+ * row * width + col, stamped with the epoch the same way), and the arrays grow
+ * as the search does. Its heap depends on the search rather than the grid,
+ * so grids of any size (eg. mapped by GridFile) can be searched, at the cost
+ * of a hash lookup per cell id.
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public class NodeStore {
+    /**
+     * State of a cell that has not been reached yet
+     */
+    public static final byte UNSEEN = 0;
+
+    /**
+     * State of a cell that is in the open nodes
+     */
+    public static final byte OPEN = 1;
+
+    /**
+     * State of a cell that has been closed
+     */
+    public static final byte CLOSED = 2;
+
+    /**
+     * Parent of a cell that has no parent (the start cell)
+     */
+    public static final int NO_PARENT = -1;
+
+    private static final int DEFAULT_SPARSE_CAPACITY = 1024; // must be a power of two
+
+    private int _width;
+    private int _height;
+    private int[] _distance;
+    private int[] _estimatedDistance;
+    private int[] _parent;
+    private byte[] _state;
+    private int[] _stamp;
+    private int _epoch = 1;
+
+    // sparse stores only
+    private boolean _sparse = false;
+    private int[] _rows;         // row of each cell id
+    private int[] _cols;         // column of each cell id
+    private int _used = 0;       // cell ids handed out this epoch
+    private int[] _keyCells;     // hash table of the cell ids, by row * width + col
+    private int[] _keyStamps;    // epoch each entry was added in, older entries are empty
+    private int _keyShift;       // 64 - log2 of the table length
+
+    /**
+     * Constructor - allocate state for every cell of a grid
+     * @param width - The width of the grid
+     * @param height - The height of the grid
+     */
+    public NodeStore(int width, int height) {
+        this(width, height, false);
+    }
+
+    /**
+     * Constructor
+     * @param width - The width of the grid
+     * @param height - The height of the grid
+     * @param sparse - true to only allocate state for the cells searches reach
+     * @throws IllegalArgumentException if the store is dense and the grid has 2^31 cells or more
+     */
+    public NodeStore(int width, int height, boolean sparse) {
+        _width = width;
+        _height = height;
+        _sparse = sparse;
+
+        int cells;
+        if (sparse) {
+            cells = DEFAULT_SPARSE_CAPACITY;
+            _rows = new int[cells];
+            _cols = new int[cells];
+            _keyCells = new int[cells * 2];
+            _keyStamps = new int[cells * 2];
+            _keyShift = 64 - Integer.numberOfTrailingZeros(cells * 2);
+        } else {
+            // cells are indexed by int, so very large grids need a sparse store
+            if ((long) width * height > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Grid of " + width + "x" + height + " is too large for a dense store");
+            }
+            cells = width * height;
+        }
+
+        _distance = new int[cells];
+        _estimatedDistance = new int[cells];
+        _parent = new int[cells];
+        _state = new byte[cells];
+        _stamp = new int[cells];
+    }
+
+    /**
+     * Get the width of the grid the store was allocated for
+     * @return width
+     */
+    public int getWidth() {
+        return _width;
+    }
+
+    /**
+     * Get the height of the grid the store was allocated for
+     * @return height
+     */
+    public int getHeight() {
+        return _height;
+    }
+
+    /**
+     * Check if the store only holds the cells searches reach
+     * @return true if sparse
+     */
+    public boolean isSparse() {
+        return _sparse;
+    }
+
+    /**
+     * Get the number of cell ids in the store, every id below it is valid
+     * @return cell count, for a sparse store the cells given an id since the last reset
+     */
+    public int getCellCount() {
+        return _sparse ? _used : _state.length;
+    }
+
+    /**
+     * Get the cell id for a row and column, giving the cell an id if the store is
+     * sparse and it doesn't have one yet
+     * @param row
+     * @param col
+     * @return cell id
+     */
+    public int cell(int row, int col) {
+        if (!_sparse) {
+            return row * _width + col;
+        }
+
+        int index = findKey(row, col);
+        if (_keyStamps[index] == _epoch) {
+            return _keyCells[index];
+        }
+
+        // new cells read as UNSEEN, the stamp of the reused id is from an older epoch
+        if (_used == _rows.length) {
+            growCells();
+        }
+        int cell = _used++;
+        _rows[cell] = row;
+        _cols[cell] = col;
+        _keyCells[index] = cell;
+        _keyStamps[index] = _epoch;
+
+        // keep the table at most half full
+        if (_used * 2 > _keyCells.length) {
+            growKeys();
+        }
+        return cell;
+    }
+
+    /**
+     * Get the cell id for a row and column without giving it one
+     * @param row
+     * @param col
+     * @return cell id, -1 if the store is sparse and the cell has no id (ie. it is UNSEEN)
+     */
+    public int find(int row, int col) {
+        if (!_sparse) {
+            return row * _width + col;
+        }
+
+        int index = findKey(row, col);
+        return _keyStamps[index] == _epoch ? _keyCells[index] : -1;
+    }
+
+    /**
+     * Get the cell id for a coordinate
+     * @param coord
+     * @return cell id
+     */
+    public int cell(Coordinate coord) {
+        return cell(coord.getRow(), coord.getCol());
+    }
+
+    /**
+     * Get the row of a cell
+     * @param cell
+     * @return row
+     */
+    public int row(int cell) {
+        return _sparse ? _rows[cell] : cell / _width;
+    }
+
+    /**
+     * Get the column of a cell
+     * @param cell
+     * @return column
+     */
+    public int col(int cell) {
+        return _sparse ? _cols[cell] : cell % _width;
+    }
+
+    /**
+     * Get the state of a cell
+     * @param cell
+     * @return UNSEEN, OPEN or CLOSED
+     */
+    public byte getState(int cell) {
+        // cells that weren't touched during the current epoch haven't been reached
+        if (_stamp[cell] != _epoch) {
+            return UNSEEN;
+        }
+        return _state[cell];
+    }
+
+    /**
+     * Set the state of a cell
+     * @param cell
+     * @param state - UNSEEN, OPEN or CLOSED
+     */
+    public void setState(int cell, byte state) {
+        _state[cell] = state;
+        _stamp[cell] = _epoch;
+    }
+
+    /**
+     * Get the distance to a cell
+     * @param cell
+     * @return distance
+     */
+    public int getDistance(int cell) {
+        return _distance[cell];
+    }
+
+    /**
+     * Set the distance to a cell
+     * @param cell
+     * @param distance
+     */
+    public void setDistance(int cell, int distance) {
+        _distance[cell] = distance;
+    }
+
+    /**
+     * Get the estimated distance of a cell
+     * @param cell
+     * @return estimated distance
+     */
+    public int getEstimatedDistance(int cell) {
+        return _estimatedDistance[cell];
+    }
+
+    /**
+     * Set the estimated distance of a cell
+     * @param cell
+     * @param distance
+     */
+    public void setEstimatedDistance(int cell, int distance) {
+        _estimatedDistance[cell] = distance;
+    }
+
+    /**
+     * Get the parent of a cell
+     * @param cell
+     * @return parent cell, NO_PARENT if there is none
+     */
+    public int getParent(int cell) {
+        return _parent[cell];
+    }
+
+    /**
+     * Set the parent of a cell
+     * @param cell
+     * @param parent - The parent cell, NO_PARENT if there is none
+     */
+    public void setParent(int cell, int parent) {
+        _parent[cell] = parent;
+    }
+
+    /**
+     * Reset every cell to UNSEEN by starting a new epoch
+     */
+    public void reset() {
+        _epoch++;
+        _used = 0;
+
+        // once the epoch wraps around old stamps could match again, so clear them
+        if (_epoch == Integer.MAX_VALUE) {
+            Arrays.fill(_stamp, 0);
+            if (_sparse) {
+                Arrays.fill(_keyStamps, 0);
+            }
+            _epoch = 1;
+        }
+    }
+
+    /**
+     * Build the Node tree for a cell, following its parents up to the root
+     * @param cell - The cell to build, must not be UNSEEN
+     * @return node for the cell
+     */
+    public Node buildNode(int cell) {
+        Node node = createNode(cell);
+        Node child = node;
+
+        // walk up through the parents iteratively, long paths would overflow the stack otherwise
+        while (_parent[cell] != NO_PARENT) {
+            cell = _parent[cell];
+            Node parent = createNode(cell);
+            child.setParent(parent);
+            child = parent;
+        }
+        return node;
+    }
+
+    /**
+     * Create a single Node (without parent) holding the state of a cell
+     * @param cell
+     * @return node for the cell
+     */
+    private Node createNode(int cell) {
+        Node node = new Node(new Coordinate(row(cell), col(cell)));
+        node.setDistance(_distance[cell]);
+        node.setEstimatedDistance(_estimatedDistance[cell]);
+        return node;
+    }
+
+    /**
+     * Find the position of a cell in the hash table of a sparse store, by linear
+     * probing. Entries from older epochs count as empty: every entry of the
+     * current epoch was added after them, so no probe for one has to pass them
+     * @param row
+     * @param col
+     * @return position holding the cell, or the empty position to add it at
+     */
+    private int findKey(int row, int col) {
+        long key = (long) row * _width + col;
+        int mask = _keyCells.length - 1;
+        int index = (int) ((key * 0x9E3779B97F4A7C15L) >>> _keyShift);
+        while (_keyStamps[index] == _epoch && (_rows[_keyCells[index]] != row || _cols[_keyCells[index]] != col)) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    /**
+     * Double the capacity of the per-cell arrays of a sparse store
+     */
+    private void growCells() {
+        int capacity = _rows.length * 2;
+        _rows = Arrays.copyOf(_rows, capacity);
+        _cols = Arrays.copyOf(_cols, capacity);
+        _distance = Arrays.copyOf(_distance, capacity);
+        _estimatedDistance = Arrays.copyOf(_estimatedDistance, capacity);
+        _parent = Arrays.copyOf(_parent, capacity);
+        _state = Arrays.copyOf(_state, capacity);
+        _stamp = Arrays.copyOf(_stamp, capacity);
+    }
+
+    /**
+     * Double the length of the hash table of a sparse store, adding the cells of
+     * the current epoch back in
+     */
+    private void growKeys() {
+        int[] oldCells = _keyCells;
+        int[] oldStamps = _keyStamps;
+        _keyCells = new int[oldCells.length * 2];
+        _keyStamps = new int[oldCells.length * 2];
+        _keyShift--;
+
+        for (int i = 0; i < oldCells.length; i++) {
+            if (oldStamps[i] == _epoch) {
+                int index = findKey(_rows[oldCells[i]], _cols[oldCells[i]]);
+                _keyCells[index] = oldCells[i];
+                _keyStamps[index] = _epoch;
+            }
+        }
+    }
+}
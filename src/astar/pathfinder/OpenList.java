@@ -0,0 +1,66 @@
+package astar.pathfinder;
+
+/**
+ * The open nodes of a search: cells ordered by their estimated distance in
+ * a NodeStore, the smallest removed first
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public interface OpenList {
+    /**
+     * Implementations of the open nodes
+     */
+    public static enum Type {
+        /**
+         * Binary heap (NodeHeap), O(log n) for any estimated distances
+         */
+        HEAP,
+        /**
+         * Circular array of buckets (BucketQueue), O(1) for estimated distances
+         * that only span a narrow range at a time
+         */
+        BUCKETS;
+    }
+
+    /**
+     * Get the number of cells in the open nodes
+     * @return size
+     */
+    public int size();
+
+    /**
+     * Check if the open nodes are empty
+     * @return true if there are no cells
+     */
+    public boolean isEmpty();
+
+    /**
+     * Add a cell, its estimated distance must already be set
+     * @param cell - The cell to add
+     */
+    public void add(int cell);
+
+    /**
+     * Get the cell with the smallest estimated distance without removing it
+     * @return smallest cell, -1 if there are no cells
+     */
+    public int peek();
+
+    /**
+     * Remove and return the cell with the smallest estimated distance
+     * @return smallest cell, -1 if there are no cells
+     */
+    public int poll();
+
+    /**
+     * Reorder a cell after its estimated distance was lowered
+     * @param cell - The cell whose estimated distance was lowered
+     */
+    public void decreaseKey(int cell);
+
+    /**
+     * Remove all cells
+     */
+    public void clear();
+}
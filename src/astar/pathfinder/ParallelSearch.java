@@ -0,0 +1,617 @@
+package astar.pathfinder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import astar.info.Coordinate;
+import astar.info.Grid;
+
+/**
+ * Hash distributed A* (HDA*), one search spread over several threads. Every
+ * cell is owned by one worker, picked by a hash of the tile of cells it's in,
+ * and only its owner opens and expands it: a worker expanding a cell sends
+ * each neighbour it doesn't own to the neighbour's owner through a lock-free
+ * queue, in batches. Each worker runs its own A* over its cells with the
+ * heuristic of an Astar implementation, so cells can be expanded before their
+ * shortest distance is known and are reopened when a shorter one arrives.
+ *
+ * The best distance to the end found so far is shared, and cells estimated to
+ * be no closer are dropped. The search is over once every worker has run out
+ * of cells below it and no batch is left in a queue, which is tracked by one
+ * counter of busy workers plus batches sent but not yet taken in (see
+ * Worker.call()). The Grid must not be changed while a search is running.
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public class ParallelSearch {
+    /**
+     * Cells per side of the square tiles that are hashed to pick a cell's owner
+     */
+    public static final int TILE_SIZE = 8;
+
+    // messages per batch sent to another worker, each message is a cell, its distance and its parent
+    private static final int MESSAGE_BATCH = 64;
+    private static final int MESSAGE_SIZE = 3;
+
+    // expansions between checks for messages from other workers
+    private static final int EXPAND_BATCH = 32;
+
+    // times an idle worker yields before it starts parking between checks
+    private static final int IDLE_SPINS = 64;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private Grid _grid;
+    private AstarFactory.Implementation _impl;
+    private Worker[] _workers;
+    private ExecutorService _executor;
+    private SearchWorkspace _workspace = null;  // only the nodes are used, each cell is written by its owner
+    private int _tilesPerRow;
+    private int _endCell;
+    private Coordinate _end;
+    private AtomicInteger _bestDistance = new AtomicInteger();
+    private AtomicInteger _work = new AtomicInteger();  // busy workers plus batches not taken in yet
+    private volatile boolean _stopped = false;
+    private boolean _oversubscribed;
+    private long _runtime = -1;
+    private int _distance = -1;
+
+    /**
+     * Constructor - use one worker per available processor
+     * @param grid - The grid to search
+     * @param impl - implementation whose heuristic (estimateDistance()) is used
+     */
+    public ParallelSearch(Grid grid, AstarFactory.Implementation impl) {
+        this(grid, impl, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor
+     * @param grid - The grid to search
+     * @param impl - implementation whose heuristic (estimateDistance()) is used
+     * @param threads - The number of worker threads
+     */
+    public ParallelSearch(Grid grid, AstarFactory.Implementation impl, int threads) {
+        _grid = grid;
+        _impl = impl;
+        _workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            Astar heuristic = AstarFactory.getAstar(impl);
+            heuristic.setGrid(grid);
+            _workers[i] = new Worker(i, heuristic);
+        }
+
+        // with more workers than processors, a worker left running on its own races
+        //   ahead with distances the others would have lowered, and expands far more
+        //   cells than it needs to, so the workers take turns after every batch
+        _oversubscribed = threads > Runtime.getRuntime().availableProcessors();
+
+        // daemon threads, so a forgotten shutdown() doesn't keep the JVM alive
+        _executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private AtomicInteger _count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "astar-parallel-" + _count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Get the number of worker threads
+     * @return thread count
+     */
+    public int getThreadCount() {
+        return _workers.length;
+    }
+
+    /**
+     * Get the time the last search took
+     * @return time in ms, -1 if the algorithm hasn't been run yet
+     */
+    public long getRuntime() {
+        return _runtime;
+    }
+
+    /**
+     * Get the distance for the path
+     * @return distance, -1 if there is no path
+     */
+    public int getDistance() {
+        return _distance;
+    }
+
+    /**
+     * Get the number of nodes expanded by all the workers. Compared with the step
+     * count of the sequential search this is the search overhead of running in
+     * parallel (cells expanded before their shortest distance arrived, or before
+     * the best distance was known to be too small for them)
+     * @return step count
+     */
+    public int getStepCount() {
+        int steps = 0;
+        for (Worker worker : _workers) {
+            steps += worker._stepCount;
+        }
+        return steps;
+    }
+
+    /**
+     * Get the number of nodes each worker expanded, to see how evenly the cells were shared
+     * @return step count of each worker
+     */
+    public int[] getWorkerStepCounts() {
+        int[] steps = new int[_workers.length];
+        for (int i = 0; i < _workers.length; i++) {
+            steps[i] = _workers[i]._stepCount;
+        }
+        return steps;
+    }
+
+    /**
+     * Get the number of cells sent from one worker to another
+     * @return message count
+     */
+    public long getMessageCount() {
+        long messages = 0;
+        for (Worker worker : _workers) {
+            messages += worker._messageCount;
+        }
+        return messages;
+    }
+
+    /**
+     * Get the number of times a closed cell was opened again with a shorter distance
+     * @return reopened count
+     */
+    public int getReopenedCount() {
+        int reopened = 0;
+        for (Worker worker : _workers) {
+            reopened += worker._reopenedCount;
+        }
+        return reopened;
+    }
+
+    /**
+     * Find the shortest path between two coordinates of the grid, ignoring the
+     * Grid's own start and end nodes
+     * @param start - The coordinate to start from
+     * @param end - The coordinate to find a path to
+     * @return list of coordinates for shortest path in order (not including start or end), null if there is none
+     * @throws Exception
+     */
+    public synchronized ArrayList<Coordinate> findPath(Coordinate start, Coordinate end) throws Exception {
+        long starttime = System.currentTimeMillis();
+
+        // check that the coordinates are within the grid
+        if (start == null || end == null)
+            throw new Exception("Start and end nodes must be set");
+        if (start.getRow() < 0 || start.getRow() >= _grid.getHeight() || start.getCol() < 0
+                || start.getCol() >= _grid.getWidth() || end.getRow() < 0 || end.getRow() >= _grid.getHeight()
+                || end.getCol() < 0 || end.getCol() >= _grid.getWidth())
+            throw new Exception("Invalid row or col number");
+
+        reInit();
+        _end = end;
+
+        // the grid builds its neighbour masks and components on first use, do that
+        //   before the workers share it
+        _grid.getNeighbourMask(0, 0);
+        if (!_grid.isReachable(start, end)) {
+            _runtime = System.currentTimeMillis() - starttime;
+            return null;
+        }
+        if (start.isEqual(end)) {
+            _distance = 0;
+            _runtime = System.currentTimeMillis() - starttime;
+            return new ArrayList<Coordinate>();
+        }
+
+        // every worker needs the heuristic's precomputed tables (if any), built once and shared
+        _workers[0]._heuristic.prepareHeuristic();
+        for (int i = 1; i < _workers.length; i++) {
+            _workers[i]._heuristic.shareHeuristic(_workers[0]._heuristic);
+        }
+
+        // the start's owner opens it, then every worker starts busy
+        NodeStore nodes = _workspace.getNodes();
+        _endCell = nodes.cell(end);
+        int startCell = nodes.cell(start);
+        _workers[owner(startCell)].openNode(startCell, 0, NodeStore.NO_PARENT);
+        _work.set(_workers.length);
+
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for (Worker worker : _workers) {
+            futures.add(_executor.submit(worker));
+        }
+
+        // wait for every worker (a failed worker stops the rest), passing on the first failure
+        Exception failure = null;
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException ex) {
+                if (failure == null) {
+                    failure = ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+
+        ArrayList<Coordinate> path = null;
+        if (_bestDistance.get() != Integer.MAX_VALUE) {
+            path = rebuildPath();
+        }
+        _runtime = System.currentTimeMillis() - starttime;
+        return path;
+    }
+
+    /**
+     * Stop the worker threads, the ParallelSearch can't be used afterwards
+     */
+    public void shutdown() {
+        _executor.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "Parallel " + _impl + " (" + _workers.length + " threads)";
+    }
+
+    /**
+     * Re-Initialize the shared state and the workers for a new search
+     */
+    private void reInit() {
+        // keep the workspace between searches, it only needs replacing when the grid size changes
+        if (_workspace == null || !_workspace.fits(_grid.getWidth(), _grid.getHeight())) {
+            _workspace = new SearchWorkspace(_grid.getWidth(), _grid.getHeight());
+            for (Worker worker : _workers) {
+                worker.allocate(_workspace.getNodes());
+            }
+        } else {
+            _workspace.reset();
+        }
+        _tilesPerRow = (_grid.getWidth() + TILE_SIZE - 1) / TILE_SIZE;
+
+        for (Worker worker : _workers) {
+            worker.reset();
+        }
+        _bestDistance.set(Integer.MAX_VALUE);
+        _stopped = false;
+        _distance = -1;
+        _runtime = -1;
+    }
+
+    /**
+     * Get the worker that owns a cell. Hashing whole tiles keeps most neighbours
+     * with the same owner, so fewer cells have to be sent to another worker
+     * @param cell
+     * @return worker index
+     */
+    private int owner(int cell) {
+        int width = _grid.getWidth();
+        int tile = (cell / width / TILE_SIZE) * _tilesPerRow + (cell % width) / TILE_SIZE;
+
+        // mix the bits so neighbouring tiles go to different workers
+        int hash = tile * 0x9E3779B9;
+        hash ^= hash >>> 16;
+        return (hash & Integer.MAX_VALUE) % _workers.length;
+    }
+
+    /**
+     * Build the list of coordinates from the end cell's parents back to the start,
+     * and set the distance of the path. A cell's parent can have been given a
+     * shorter distance after it was set, but never a longer one, so following the
+     * parents always leads back to the start and the path can only be shorter
+     * than the best distance the workers found
+     * @return list of coordinates in order (not including the start or end node)
+     */
+    private ArrayList<Coordinate> rebuildPath() {
+        NodeStore nodes = _workspace.getNodes();
+        ArrayList<Coordinate> list = new ArrayList<Coordinate>();
+        int distance = 0;
+        int cell = _endCell;
+        int parent = nodes.getParent(cell);
+        while (parent != NodeStore.NO_PARENT) {
+            boolean lateral = nodes.row(cell) == nodes.row(parent) || nodes.col(cell) == nodes.col(parent);
+            distance += lateral ? Grid.MOVE_LATERAL : Grid.MOVE_DIAGONAL;
+            if (nodes.getParent(parent) != NodeStore.NO_PARENT) {
+                list.add(new Coordinate(nodes.row(parent), nodes.col(parent)));
+            }
+            cell = parent;
+            parent = nodes.getParent(cell);
+        }
+        Collections.reverse(list);
+        _distance = distance;
+        return list;
+    }
+
+    /**
+     * Lower the best distance to the end, if a distance is shorter
+     * @param distance
+     */
+    private void offerDistance(int distance) {
+        int best = _bestDistance.get();
+        while (distance < best && !_bestDistance.compareAndSet(best, distance)) {
+            best = _bestDistance.get();
+        }
+    }
+
+    /**
+     * Searches the cells owned by one thread
+     */
+    private class Worker implements Callable<Void> {
+        private int _index;
+        private Astar _heuristic;
+        private Coordinate _coord = new Coordinate(); // reused for every heuristic call
+        private NodeStore _nodes;
+        private NodeHeap _openNodes;
+        private ConcurrentLinkedQueue<int[]> _inbox = new ConcurrentLinkedQueue<int[]>();
+        private int[][] _outbox;  // batch being filled for each worker, the message count first
+        private int _stepCount = 0;
+        private int _reopenedCount = 0;
+        private long _messageCount = 0;
+
+        /**
+         * Constructor
+         * @param index - The index of the worker
+         * @param heuristic - The Astar instance owned by the worker, for its heuristic
+         */
+        public Worker(int index, Astar heuristic) {
+            _index = index;
+            _heuristic = heuristic;
+        }
+
+        /**
+         * Allocate the open nodes for a store of nodes shared by all workers
+         * @param nodes
+         */
+        public void allocate(NodeStore nodes) {
+            _nodes = nodes;
+            _openNodes = new NodeHeap(nodes);
+        }
+
+        /**
+         * Clear the state of the last search
+         */
+        public void reset() {
+            _openNodes.clear();
+            _inbox.clear();
+            _outbox = new int[_workers.length][];
+            _stepCount = 0;
+            _reopenedCount = 0;
+            _messageCount = 0;
+        }
+
+        /**
+         * Expand cells and take in the cells sent by other workers until the search is over.
+         *
+         * The worker counts itself in _work while it's busy, and every batch sent
+         * counts until the worker it was sent to next goes idle. A busy worker
+         * only goes idle once it has sent its batches, and wakes up (counting
+         * itself again) before taking in a batch, so _work only reaches 0 when
+         * every worker is idle with no batch waiting, and then stays there
+         * @return nothing
+         * @throws Exception
+         */
+        @Override
+        public Void call() throws Exception {
+            try {
+                int received = 0;
+                while (!_stopped) {
+                    received += receive();
+
+                    // expand the cells that could still lead to a shorter path, then send
+                    //   on what they reached so the other workers aren't kept waiting
+                    int expanded = 0;
+                    while (expanded < EXPAND_BATCH && !_openNodes.isEmpty()
+                            && _nodes.getEstimatedDistance(_openNodes.peek()) < _bestDistance.get()) {
+                        expand(_openNodes.poll());
+                        expanded++;
+                    }
+                    flush();
+                    if (expanded > 0) {
+                        if (_oversubscribed) {
+                            Thread.yield();
+                        }
+                        continue;
+                    }
+
+                    // nothing left to do for now
+                    if (_work.addAndGet(-1 - received) == 0) {
+                        return null;
+                    }
+                    received = 0;
+                    if (!awaitWork()) {
+                        return null;
+                    }
+                }
+                return null;
+            } catch (RuntimeException ex) {
+                _stopped = true;
+                throw ex;
+            } catch (Error ex) {
+                _stopped = true;
+                throw ex;
+            }
+        }
+
+        /**
+         * Wait while idle until a batch arrives or the search is over
+         * @return true if a batch arrived, false if the search is over
+         */
+        private boolean awaitWork() {
+            for (int spins = 0; !_stopped; spins++) {
+                if (!_inbox.isEmpty()) {
+                    _work.incrementAndGet();
+                    return true;
+                }
+                if (_work.get() == 0) {
+                    return false;
+                }
+                if (spins < IDLE_SPINS) {
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Open the cells of every batch waiting in the inbox
+         * @return number of batches taken in
+         */
+        private int receive() {
+            int batches = 0;
+            int[] batch;
+            while ((batch = _inbox.poll()) != null) {
+                int end = 1 + batch[0] * MESSAGE_SIZE;
+                for (int i = 1; i < end; i += MESSAGE_SIZE) {
+                    openNode(batch[i], batch[i + 1], batch[i + 2]);
+                }
+                batches++;
+            }
+            return batches;
+        }
+
+        /**
+         * Close a cell and pass each of its neighbours to its owner
+         * @param cell
+         */
+        private void expand(int cell) {
+            _nodes.setState(cell, NodeStore.CLOSED);
+            _stepCount++;
+
+            int row = _nodes.row(cell);
+            int col = _nodes.col(cell);
+            int distance = _nodes.getDistance(cell);
+
+            // the mask only has bits for adjacent cells within the grid that aren't blocks
+            int mask = _grid.getNeighbourMask(row, col);
+            for (int i = 0; mask != 0; i++, mask >>>= 1) {
+                if ((mask & 1) == 0) {
+                    continue;
+                }
+
+                int rowOffset = Grid.NEIGHBOUR_ROW_OFFSETS[i];
+                int colOffset = Grid.NEIGHBOUR_COL_OFFSETS[i];
+                int neighbour = _nodes.cell(row + rowOffset, col + colOffset);
+                int neighbourDistance = distance + (rowOffset == 0 || colOffset == 0 ? Grid.MOVE_LATERAL : Grid.MOVE_DIAGONAL);
+
+                int owner = owner(neighbour);
+                if (owner == _index) {
+                    openNode(neighbour, neighbourDistance, cell);
+                } else {
+                    send(owner, neighbour, neighbourDistance, cell);
+                }
+            }
+        }
+
+        /**
+         * Open a cell owned by this worker, or lower its distance if it has been
+         * reached already (reopening it if it's closed). The end cell is never
+         * opened, reaching it only lowers the best distance
+         * @param cell
+         * @param distance - The distance to the cell through its parent
+         * @param parent
+         */
+        private void openNode(int cell, int distance, int parent) {
+            byte state = _nodes.getState(cell);
+            if (state != NodeStore.UNSEEN && _nodes.getDistance(cell) <= distance) {
+                return;
+            }
+
+            if (cell == _endCell) {
+                _nodes.setDistance(cell, distance);
+                _nodes.setParent(cell, parent);
+                _nodes.setState(cell, NodeStore.CLOSED);
+                offerDistance(distance);
+                return;
+            }
+
+            // a cell estimated to be no closer than the best path can't make it shorter
+            _coord.setRow(_nodes.row(cell));
+            _coord.setCol(_nodes.col(cell));
+            int estimate = distance + _heuristic.estimateDistance(_coord, _end);
+            if (estimate >= _bestDistance.get()) {
+                return;
+            }
+
+            _nodes.setDistance(cell, distance);
+            _nodes.setEstimatedDistance(cell, estimate);
+            _nodes.setParent(cell, parent);
+            if (state == NodeStore.OPEN) {
+                _openNodes.decreaseKey(cell);
+            } else {
+                if (state == NodeStore.CLOSED) {
+                    _reopenedCount++;
+                }
+                _nodes.setState(cell, NodeStore.OPEN);
+                _openNodes.add(cell);
+            }
+        }
+
+        /**
+         * Add a cell to the batch for its owner, sending the batch once it's full
+         * @param owner
+         * @param cell
+         * @param distance
+         * @param parent
+         */
+        private void send(int owner, int cell, int distance, int parent) {
+            int[] batch = _outbox[owner];
+            if (batch == null) {
+                batch = new int[1 + MESSAGE_BATCH * MESSAGE_SIZE];
+                _outbox[owner] = batch;
+            }
+
+            int index = 1 + batch[0] * MESSAGE_SIZE;
+            batch[index] = cell;
+            batch[index + 1] = distance;
+            batch[index + 2] = parent;
+            batch[0]++;
+            _messageCount++;
+
+            if (batch[0] == MESSAGE_BATCH) {
+                post(owner);
+            }
+        }
+
+        /**
+         * Send every batch that has any cells in it
+         */
+        private void flush() {
+            for (int owner = 0; owner < _outbox.length; owner++) {
+                if (_outbox[owner] != null) {
+                    post(owner);
+                }
+            }
+        }
+
+        /**
+         * Hand a batch over to its owner, counting it as work until the owner takes it in
+         * @param owner
+         */
+        private void post(int owner) {
+            _work.incrementAndGet();
+            _workers[owner]._inbox.offer(_outbox[owner]);
+            _outbox[owner] = null;
+        }
+    }
+}
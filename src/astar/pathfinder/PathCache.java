@@ -0,0 +1,361 @@
+package astar.pathfinder;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import astar.info.Coordinate;
+import astar.info.Grid;
+import astar.info.GridListener;
+
+/**
+ * Caches the results of path queries against one Grid, keyed by the
+ * implementation (algorithm/heuristic) and the start and end cells, so
+ * repeated queries cost a lookup instead of a search. The least recently used
+ * results are evicted once the cache holds more than a number of results or
+ * path cells.
+ *
+ * The cache listens to the grid and only drops the results a block change
+ * can affect: adding a block drops the results whose path crosses the cell,
+ * removing a block drops the results that a path through the cell could be
+ * shorter than (using the diagonal distance as a lower bound) and the queries
+ * that had no path.
+ *
+ * The returned results are shared by every caller, their paths must not be changed.
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public class PathCache implements GridListener {
+    private Grid _grid;
+    private int _maxEntries;
+    private long _maxCells;
+    private long _cellCount = 0;
+    private boolean _bidirectional = false;
+    private Map<Key, Entry> _entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+    private HashMap<Integer, HashSet<Entry>> _entriesByCell = new HashMap<Integer, HashSet<Entry>>();
+    private EnumMap<AstarFactory.Implementation, Astar> _engines =
+        new EnumMap<AstarFactory.Implementation, Astar>(AstarFactory.Implementation.class);
+    private long _hits = 0;
+    private long _misses = 0;
+    private long _evictions = 0;
+    private long _invalidations = 0;
+
+    /**
+     * Constructor - the cache starts listening to the grid until close() is called
+     * @param grid - The grid to search
+     * @param maxEntries - The largest number of results to keep
+     * @param maxCells - The largest number of path cells to keep, over all results
+     */
+    public PathCache(Grid grid, int maxEntries, long maxCells) {
+        _grid = grid;
+        _maxEntries = maxEntries;
+        _maxCells = maxCells;
+        _grid.addListener(this);
+    }
+
+    /**
+     * Set whether searches go from both ends of a query at once, clears the cache
+     * if it changes (results may differ between the two modes)
+     * @param bidirectional
+     */
+    public synchronized void setBidirectional(boolean bidirectional) {
+        if (bidirectional != _bidirectional) {
+            _bidirectional = bidirectional;
+            for (Astar astar : _engines.values()) {
+                astar.setBidirectional(bidirectional);
+            }
+            clear();
+        }
+    }
+
+    /**
+     * Find a path between two coordinates, searching only if the result isn't cached
+     * @param impl - implementation (algorithm/heuristic) to search with
+     * @param start - The coordinate to start from
+     * @param end - The coordinate to find a path to
+     * @return result of the query, shared with other callers
+     * @throws Exception if either coordinate is not within the grid
+     */
+    public synchronized PathResult findPath(AstarFactory.Implementation impl, Coordinate start, Coordinate end)
+            throws Exception {
+        // out of range coordinates could map to the cell id of another coordinate
+        if (!isWithinGrid(start) || !isWithinGrid(end)) {
+            throw new Exception("Invalid row or col number");
+        }
+
+        Astar astar = getEngine(impl);
+        Key key = new Key(impl, cell(start), cell(end));
+
+        Entry entry = _entries.get(key);
+        if (entry != null) {
+            _hits++;
+            return entry._result;
+        }
+        _misses++;
+
+        long starttime = System.nanoTime();
+        ArrayList<Coordinate> path = astar.findPath(start, end);
+        long nanos = System.nanoTime() - starttime;
+
+        PathResult result = new PathResult(new PathQuery(start, end), path,
+                path == null ? -1 : astar.getDistance(), astar.getStepCount(), nanos);
+        add(key, result);
+        return result;
+    }
+
+    /**
+     * Get the number of queries answered from the cache
+     * @return hit count
+     */
+    public synchronized long getHits() {
+        return _hits;
+    }
+
+    /**
+     * Get the number of queries that had to be searched
+     * @return miss count
+     */
+    public synchronized long getMisses() {
+        return _misses;
+    }
+
+    /**
+     * Get the number of results evicted to stay within the size limits
+     * @return eviction count
+     */
+    public synchronized long getEvictions() {
+        return _evictions;
+    }
+
+    /**
+     * Get the number of results dropped because of block changes
+     * @return invalidation count
+     */
+    public synchronized long getInvalidations() {
+        return _invalidations;
+    }
+
+    /**
+     * Get the number of cached results
+     * @return size
+     */
+    public synchronized int size() {
+        return _entries.size();
+    }
+
+    /**
+     * Remove every cached result
+     */
+    public synchronized void clear() {
+        _entries.clear();
+        _entriesByCell.clear();
+        _cellCount = 0;
+    }
+
+    /**
+     * Stop listening to the grid and drop every cached result
+     */
+    public synchronized void close() {
+        _grid.removeListener(this);
+        clear();
+    }
+
+    @Override
+    public synchronized void blockChanged(int row, int col, boolean blocked) {
+        int cell = row * _grid.getWidth() + col;
+
+        if (blocked) {
+            // only paths crossing the cell are broken
+            HashSet<Entry> crossing = _entriesByCell.get(cell);
+            if (crossing != null) {
+                for (Entry entry : new ArrayList<Entry>(crossing)) {
+                    remove(entry);
+                    _invalidations++;
+                }
+            }
+            return;
+        }
+
+        // a path through the cell can't be shorter than the diagonal distance via the cell
+        Iterator<Entry> it = new ArrayList<Entry>(_entries.values()).iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            int distance = entry._result.getDistance();
+            int viaCell = lowerBound(entry._key._start, cell) + lowerBound(cell, entry._key._end);
+            if (distance < 0 || viaCell < distance) {
+                remove(entry);
+                _invalidations++;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void gridCleared() {
+        _invalidations += _entries.size();
+        clear();
+    }
+
+    /**
+     * Get the engine for an implementation, creating it on first use
+     * @param impl
+     * @return engine searching the grid
+     */
+    private Astar getEngine(AstarFactory.Implementation impl) {
+        Astar astar = _engines.get(impl);
+        if (astar == null) {
+            astar = AstarFactory.getAstar(impl);
+            astar.setGrid(_grid);
+            astar.setBidirectional(_bidirectional);
+            _engines.put(impl, astar);
+        }
+        return astar;
+    }
+
+    /**
+     * Add a result to the cache and evict the least recently used results
+     * until it is within the size limits again
+     * @param key
+     * @param result
+     */
+    private void add(Key key, PathResult result) {
+        ArrayList<Coordinate> path = result.getPath();
+        int pathSize = path == null ? 0 : path.size();
+
+        // index the result by every cell it depends on, the path plus start and end
+        int[] cells = new int[pathSize + 2];
+        cells[0] = key._start;
+        cells[1] = key._end;
+        for (int i = 0; i < pathSize; i++) {
+            cells[i + 2] = cell(path.get(i));
+        }
+
+        Entry entry = new Entry(key, result, cells);
+        _entries.put(key, entry);
+        for (int cell : cells) {
+            HashSet<Entry> entries = _entriesByCell.get(cell);
+            if (entries == null) {
+                entries = new HashSet<Entry>();
+                _entriesByCell.put(cell, entries);
+            }
+            entries.add(entry);
+        }
+        _cellCount += cells.length;
+
+        // the map is in access order, so the first entry is the least recently used
+        Iterator<Entry> eldest = _entries.values().iterator();
+        while ((_entries.size() > _maxEntries || _cellCount > _maxCells) && _entries.size() > 1) {
+            Entry evicted = eldest.next();
+            eldest.remove();
+            unindex(evicted);
+            _evictions++;
+        }
+    }
+
+    /**
+     * Remove a result from the cache
+     * @param entry
+     */
+    private void remove(Entry entry) {
+        if (_entries.remove(entry._key) != null) {
+            unindex(entry);
+        }
+    }
+
+    /**
+     * Remove a result from the per cell index
+     * @param entry
+     */
+    private void unindex(Entry entry) {
+        for (int cell : entry._cells) {
+            HashSet<Entry> entries = _entriesByCell.get(cell);
+            if (entries != null) {
+                entries.remove(entry);
+                if (entries.isEmpty()) {
+                    _entriesByCell.remove(cell);
+                }
+            }
+        }
+        _cellCount -= entry._cells.length;
+    }
+
+    /**
+     * Get the shortest possible distance between two cells, ignoring blocks
+     * @param from
+     * @param to
+     * @return diagonal distance
+     */
+    private int lowerBound(int from, int to) {
+        int width = _grid.getWidth();
+        int rows = Math.abs(from / width - to / width);
+        int cols = Math.abs(from % width - to % width);
+        return Grid.MOVE_DIAGONAL * Math.min(rows, cols) + Grid.MOVE_LATERAL * Math.abs(rows - cols);
+    }
+
+    /**
+     * Check if a coordinate is within the grid
+     * @param coord
+     * @return true if the coordinate is within the grid
+     */
+    private boolean isWithinGrid(Coordinate coord) {
+        return coord.getRow() >= 0 && coord.getRow() < _grid.getHeight()
+                && coord.getCol() >= 0 && coord.getCol() < _grid.getWidth();
+    }
+
+    /**
+     * Get the cell id of a coordinate
+     * @param coord
+     * @return cell id
+     */
+    private int cell(Coordinate coord) {
+        return coord.getRow() * _grid.getWidth() + coord.getCol();
+    }
+
+    /**
+     * Identifies a query: the implementation and the start and end cells
+     */
+    private static class Key {
+        private AstarFactory.Implementation _impl;
+        private int _start;
+        private int _end;
+
+        public Key(AstarFactory.Implementation impl, int start, int end) {
+            _impl = impl;
+            _start = start;
+            _end = end;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return _impl == other._impl && _start == other._start && _end == other._end;
+        }
+
+        @Override
+        public int hashCode() {
+            return (_impl.ordinal() * 31 + _start) * 31 + _end;
+        }
+    }
+
+    /**
+     * A cached result and the cells it depends on
+     */
+    private static class Entry {
+        private Key _key;
+        private PathResult _result;
+        private int[] _cells;
+
+        public Entry(Key key, PathResult result, int[] cells) {
+            _key = key;
+            _result = result;
+            _cells = cells;
+        }
+    }
+}
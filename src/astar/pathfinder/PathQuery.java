@@ -0,0 +1,40 @@
+package astar.pathfinder;
+
+import astar.info.Coordinate;
+
+/**
+ * A request for the shortest path between two coordinates of a Grid
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public class PathQuery {
+    private Coordinate _start;
+    private Coordinate _end;
+
+    /**
+     * Constructor
+     * @param start - The coordinate to start from
+     * @param end - The coordinate to find a path to
+     */
+    public PathQuery(Coordinate start, Coordinate end) {
+        _start = start.clone();
+        _end = end.clone();
+    }
+
+    /**
+     * Get the coordinate to start from
+     * @return start coordinate
+     */
+    public Coordinate getStart() {
+        return _start;
+    }
+
+    /**
+     * Get the coordinate to find a path to
+     * @return end coordinate
+     */
+    public Coordinate getEnd() {
+        return _end;
+    }
+}
@@ -0,0 +1,75 @@
+package astar.pathfinder;
+
+import java.util.ArrayList;
+
+import astar.info.Coordinate;
+
+/**
+ * The outcome of a single PathQuery
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public class PathResult {
+    private PathQuery _query;
+    private ArrayList<Coordinate> _path;
+    private int _distance;
+    private int _stepCount;
+    private long _nanos;
+
+    /**
+     * Constructor
+     * @param query - The query answered
+     * @param path - The path found (not including start or end), null if there is none
+     * @param distance - The distance of the path, -1 if there is none
+     * @param stepCount - The number of nodes expanded
+     * @param nanos - The time the search took in nanoseconds
+     */
+    public PathResult(PathQuery query, ArrayList<Coordinate> path, int distance, int stepCount, long nanos) {
+        _query = query;
+        _path = path;
+        _distance = distance;
+        _stepCount = stepCount;
+        _nanos = nanos;
+    }
+
+    /**
+     * Get the query answered
+     * @return query
+     */
+    public PathQuery getQuery() {
+        return _query;
+    }
+
+    /**
+     * Get the path found
+     * @return list of coordinates (not including start or end), null if there is no path
+     */
+    public ArrayList<Coordinate> getPath() {
+        return _path;
+    }
+
+    /**
+     * Get the distance of the path
+     * @return distance, -1 if there is no path
+     */
+    public int getDistance() {
+        return _distance;
+    }
+
+    /**
+     * Get the number of nodes expanded by the search
+     * @return step count
+     */
+    public int getStepCount() {
+        return _stepCount;
+    }
+
+    /**
+     * Get the time the search took
+     * @return time in ns
+     */
+    public long getNanos() {
+        return _nanos;
+    }
+}
@@ -0,0 +1,22 @@
+package astar.pathfinder;
+
+/**
+ * Thrown by Astar.findPath() when its SearchMonitor cancels the search
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public class SearchCancelledException extends Exception {
+    /**
+     * Generated Serial Version ID
+     */
+    private static final long serialVersionUID = -4727466185104920466L;
+
+    /**
+     * Constructor
+     * @param stepCount - The number of steps the search took before it was cancelled
+     */
+    public SearchCancelledException(int stepCount) {
+        super("Search cancelled after " + stepCount + " steps");
+    }
+}
@@ -0,0 +1,18 @@
+package astar.pathfinder;
+
+/**
+ * Watches a running search, eg. to cancel it or show its progress. The
+ * monitor is called from the thread running the search, so it must be quick
+ * and hand anything slow (like painting) to another thread
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public interface SearchMonitor {
+    /**
+     * Called every Astar.MONITOR_INTERVAL expansions while a search runs
+     * @param search - The running search, getSnapshot() and getStepCount() can be called on it
+     * @return false to cancel the search, which then throws a SearchCancelledException
+     */
+    public boolean checkpoint(Astar search);
+}
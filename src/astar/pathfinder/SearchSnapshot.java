@@ -0,0 +1,75 @@
+package astar.pathfinder;
+
+import java.util.BitSet;
+
+/**
+ * Copy of the open and closed cells of a running search, which can be read
+ * on another thread (eg. to paint the search's progress) while it continues
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public class SearchSnapshot {
+    private int _width;
+    private int _stepCount;
+    private BitSet _open;
+    private BitSet _closed;
+
+    /**
+     * Constructor
+     * @param width - The width of the grid searched
+     * @param stepCount - The number of steps taken so far
+     * @param open - The open cells (row * width + col)
+     * @param closed - The closed cells (row * width + col)
+     */
+    public SearchSnapshot(int width, int stepCount, BitSet open, BitSet closed) {
+        _width = width;
+        _stepCount = stepCount;
+        _open = open;
+        _closed = closed;
+    }
+
+    /**
+     * Get the number of steps the search had taken
+     * @return step count
+     */
+    public int getStepCount() {
+        return _stepCount;
+    }
+
+    /**
+     * Check if a cell was open (reached but not expanded)
+     * @param row
+     * @param col
+     * @return true if open
+     */
+    public boolean isOpen(int row, int col) {
+        return _open.get(row * _width + col);
+    }
+
+    /**
+     * Check if a cell was closed (expanded)
+     * @param row
+     * @param col
+     * @return true if closed
+     */
+    public boolean isClosed(int row, int col) {
+        return _closed.get(row * _width + col);
+    }
+
+    /**
+     * Get the number of open cells
+     * @return open count
+     */
+    public int getOpenCount() {
+        return _open.cardinality();
+    }
+
+    /**
+     * Get the number of closed cells
+     * @return closed count
+     */
+    public int getClosedCount() {
+        return _closed.cardinality();
+    }
+}
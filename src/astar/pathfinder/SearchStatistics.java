@@ -0,0 +1,195 @@
+package astar.pathfinder;
+
+import astar.info.Coordinate;
+
+/**
+ * Statistics of a single search, passed to the StatisticsCollector of the
+ * Astar instance that ran it
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public class SearchStatistics {
+    private String _implementation;
+    private boolean _bidirectional;
+    private int _gridWidth;
+    private int _gridHeight;
+    private Coordinate _start;
+    private Coordinate _end;
+    private long _nanos;
+    private int _distance;
+    private int _pathLength;
+    private int _expanded;
+    private int _generated;
+    private int _decreasedKeys;
+    private int _openPeak;
+    private long _heapOperations;
+    private int _heuristicEvaluations;
+
+    /**
+     * Constructor
+     * @param implementation - The name of the implementation that ran the search
+     * @param bidirectional - true if the search ran from both ends
+     * @param gridWidth - The width of the grid searched
+     * @param gridHeight - The height of the grid searched
+     * @param start - The coordinate the search started from
+     * @param end - The coordinate the search looked for
+     * @param nanos - The wall time of the search in nanoseconds
+     * @param distance - The distance of the path, -1 if there is none
+     * @param pathLength - The number of coordinates in the path (not including start or end), -1 if there is none
+     * @param expanded - The number of nodes expanded
+     * @param generated - The number of successor nodes generated
+     * @param decreasedKeys - The number of open nodes reached again with a shorter distance
+     * @param openPeak - The largest number of nodes in the open list
+     * @param heapOperations - The number of adds, polls and decrease-keys on the open list
+     * @param heuristicEvaluations - The number of calls to the heuristic
+     */
+    public SearchStatistics(String implementation, boolean bidirectional, int gridWidth, int gridHeight,
+            Coordinate start, Coordinate end, long nanos, int distance, int pathLength, int expanded, int generated,
+            int decreasedKeys, int openPeak, long heapOperations, int heuristicEvaluations) {
+        _implementation = implementation;
+        _bidirectional = bidirectional;
+        _gridWidth = gridWidth;
+        _gridHeight = gridHeight;
+        _start = start;
+        _end = end;
+        _nanos = nanos;
+        _distance = distance;
+        _pathLength = pathLength;
+        _expanded = expanded;
+        _generated = generated;
+        _decreasedKeys = decreasedKeys;
+        _openPeak = openPeak;
+        _heapOperations = heapOperations;
+        _heuristicEvaluations = heuristicEvaluations;
+    }
+
+    /**
+     * Get the name of the implementation that ran the search
+     * @return implementation name
+     */
+    public String getImplementation() {
+        return _implementation;
+    }
+
+    /**
+     * Check if the search ran from both ends
+     * @return true if bidirectional
+     */
+    public boolean isBidirectional() {
+        return _bidirectional;
+    }
+
+    /**
+     * Get the width of the grid searched
+     * @return number of columns
+     */
+    public int getGridWidth() {
+        return _gridWidth;
+    }
+
+    /**
+     * Get the height of the grid searched
+     * @return number of rows
+     */
+    public int getGridHeight() {
+        return _gridHeight;
+    }
+
+    /**
+     * Get the coordinate the search started from
+     * @return start coordinate
+     */
+    public Coordinate getStart() {
+        return _start;
+    }
+
+    /**
+     * Get the coordinate the search looked for
+     * @return end coordinate
+     */
+    public Coordinate getEnd() {
+        return _end;
+    }
+
+    /**
+     * Get the wall time of the search
+     * @return time in ns
+     */
+    public long getNanos() {
+        return _nanos;
+    }
+
+    /**
+     * Get the distance of the path found
+     * @return distance, -1 if there is no path
+     */
+    public int getDistance() {
+        return _distance;
+    }
+
+    /**
+     * Get the number of coordinates in the path found
+     * @return path length (not including start or end), -1 if there is no path
+     */
+    public int getPathLength() {
+        return _pathLength;
+    }
+
+    /**
+     * Get the number of nodes expanded (whose successors were generated)
+     * @return expanded count
+     */
+    public int getExpanded() {
+        return _expanded;
+    }
+
+    /**
+     * Get the number of successor nodes generated, including ones already closed
+     * @return generated count
+     */
+    public int getGenerated() {
+        return _generated;
+    }
+
+    /**
+     * Get the number of open nodes reached again with a shorter distance, ie. the
+     * decrease-keys on the open list. Closed nodes are never reopened
+     * @return decrease-key count
+     */
+    public int getDecreasedKeys() {
+        return _decreasedKeys;
+    }
+
+    /**
+     * Get the largest number of nodes in the open list (of either direction, if bidirectional)
+     * @return open list peak size
+     */
+    public int getOpenPeak() {
+        return _openPeak;
+    }
+
+    /**
+     * Get the number of adds, polls and decrease-keys on the open list
+     * @return heap operation count
+     */
+    public long getHeapOperations() {
+        return _heapOperations;
+    }
+
+    /**
+     * Get the number of calls to the heuristic
+     * @return heuristic evaluation count
+     */
+    public int getHeuristicEvaluations() {
+        return _heuristicEvaluations;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s%s: %d ns, distance %d, %d expanded, %d generated, %d decrease-keys, "
+                + "open peak %d, %d heap ops, %d heuristic calls", _implementation,
+                _bidirectional ? " (bidirectional)" : "", _nanos, _distance, _expanded, _generated, _decreasedKeys,
+                _openPeak, _heapOperations, _heuristicEvaluations);
+    }
+}
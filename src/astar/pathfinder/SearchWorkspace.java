@@ -0,0 +1,148 @@
+package astar.pathfinder;
+
+/**
+ * The per-cell state and open nodes used by a single search, sized to a Grid
+ * (or, if sparse, to the cells searches reach). A workspace is kept between
+ * searches and reset in constant time, so repeated searches over the same
+ * Grid don't allocate any search state once it has grown to fit them.
+ * A workspace must only be used by one search at a time.
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public class SearchWorkspace {
+    // bytes of state per cell: a state byte and the distance, estimated distance,
+    //   parent, stamp and heap index ints
+    private static final long BYTES_PER_CELL = 1 + 5 * 4;
+
+    // bytes per cell added by a bucket queue: its next, previous and key ints
+    private static final long BUCKET_BYTES_PER_CELL = 3 * 4;
+
+    // share of the maximum heap dense state may take before a sparse store is used instead
+    private static final int DENSE_HEAP_DIVISOR = 4;
+
+    private NodeStore _nodes;
+    private NodeHeap _openNodes;
+    private BucketQueue _bucketQueue = null; // only allocated once asked for
+    private DistanceHistogram _openDistances = new DistanceHistogram();
+
+    /**
+     * Constructor - allocate a workspace for a grid
+     * @param width - The width of the grid
+     * @param height - The height of the grid
+     */
+    public SearchWorkspace(int width, int height) {
+        this(width, height, false);
+    }
+
+    /**
+     * Constructor
+     * @param width - The width of the grid
+     * @param height - The height of the grid
+     * @param sparse - true to only allocate state for the cells searches reach (see NodeStore)
+     */
+    public SearchWorkspace(int width, int height, boolean sparse) {
+        _nodes = new NodeStore(width, height, sparse);
+        _openNodes = new NodeHeap(_nodes);
+    }
+
+    /**
+     * Estimate the heap a dense workspace for a grid takes. The state has one
+     * entry per cell, so it grows with the grid however little of it a search visits
+     * @param width - The width of the grid
+     * @param height - The height of the grid
+     * @param type - The implementation of the open nodes the workspace will be used with
+     * @return size in bytes
+     */
+    public static long estimateBytes(int width, int height, OpenList.Type type) {
+        long cells = (long) width * height;
+        return cells * (type == OpenList.Type.BUCKETS ? BYTES_PER_CELL + BUCKET_BYTES_PER_CELL : BYTES_PER_CELL);
+    }
+
+    /**
+     * Check if workspaces for a grid should be sparse, ie. the grid has too many
+     * cells to index by int, or dense state would take a large share of the
+     * maximum heap. Searches are a little slower with a sparse workspace
+     * @param width - The width of the grid
+     * @param height - The height of the grid
+     * @param type - The implementation of the open nodes the workspaces will be used with
+     * @param count - The number of workspaces a search needs (2 if bidirectional)
+     * @return true to allocate sparse workspaces
+     */
+    public static boolean needsSparse(int width, int height, OpenList.Type type, int count) {
+        if ((long) width * height > Integer.MAX_VALUE) {
+            return true;
+        }
+        long maxBytes = Runtime.getRuntime().maxMemory();
+        return maxBytes != Long.MAX_VALUE && estimateBytes(width, height, type) * count > maxBytes / DENSE_HEAP_DIVISOR;
+    }
+
+    /**
+     * Check if the workspace was allocated for a grid of the given dimensions
+     * @param width
+     * @param height
+     * @return true if the workspace can be used for the grid
+     */
+    public boolean fits(int width, int height) {
+        return _nodes.getWidth() == width && _nodes.getHeight() == height;
+    }
+
+    /**
+     * Check if the workspace only holds the cells searches reach
+     * @return true if sparse
+     */
+    public boolean isSparse() {
+        return _nodes.isSparse();
+    }
+
+    /**
+     * Get the per-cell search state
+     * @return node store
+     */
+    public NodeStore getNodes() {
+        return _nodes;
+    }
+
+    /**
+     * Get the open nodes
+     * @return open node heap
+     */
+    public NodeHeap getOpenNodes() {
+        return _openNodes;
+    }
+
+    /**
+     * Get the open nodes of a type
+     * @param type - The implementation of the open nodes
+     * @return open nodes
+     */
+    public OpenList getOpenNodes(OpenList.Type type) {
+        if (type == OpenList.Type.BUCKETS) {
+            if (_bucketQueue == null) {
+                _bucketQueue = new BucketQueue(_nodes);
+            }
+            return _bucketQueue;
+        }
+        return _openNodes;
+    }
+
+    /**
+     * Get the distances of the open nodes (only tracked by bidirectional searches)
+     * @return open node distances
+     */
+    public DistanceHistogram getOpenDistances() {
+        return _openDistances;
+    }
+
+    /**
+     * Forget the state of the previous search
+     */
+    public void reset() {
+        _nodes.reset();
+        _openNodes.clear();
+        if (_bucketQueue != null) {
+            _bucketQueue.clear();
+        }
+        _openDistances.clear();
+    }
+}
@@ -0,0 +1,56 @@
+package astar.pathfinder;
+
+import java.util.ArrayList;
+
+/**
+ * Pool of SearchWorkspaces, so that callers running many searches (possibly
+ * from several threads) can share the allocated workspaces instead of
+ * allocating state for every search.
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public class SearchWorkspacePool {
+    private ArrayList<SearchWorkspace> _free = new ArrayList<SearchWorkspace>();
+
+    /**
+     * Constructor
+     */
+    public SearchWorkspacePool() {}
+
+    /**
+     * Take a reset workspace for a grid out of the pool, allocating one if
+     * there are none of the right size available (sparse if the grid needs it,
+     * see SearchWorkspace.needsSparse())
+     * @param width - The width of the grid
+     * @param height - The height of the grid
+     * @return workspace
+     */
+    public synchronized SearchWorkspace acquire(int width, int height) {
+        // look for a free workspace of the right size, starting with the most recently released
+        for (int i = _free.size() - 1; i >= 0; i--) {
+            if (_free.get(i).fits(width, height)) {
+                SearchWorkspace workspace = _free.remove(i);
+                workspace.reset();
+                return workspace;
+            }
+        }
+
+        return new SearchWorkspace(width, height, SearchWorkspace.needsSparse(width, height, OpenList.Type.HEAP, 1));
+    }
+
+    /**
+     * Return a workspace to the pool
+     * @param workspace - The workspace to return, it must not be used afterwards
+     */
+    public synchronized void release(SearchWorkspace workspace) {
+        _free.add(workspace);
+    }
+
+    /**
+     * Drop all free workspaces held by the pool
+     */
+    public synchronized void clear() {
+        _free.clear();
+    }
+}
@@ -0,0 +1,30 @@
+package astar.pathfinder;
+
+/**
+ * Receives the statistics of every search an Astar instance runs. A collector
+ * set on several instances searching at once (eg. by BatchSearch) must be
+ * thread safe.
+ *
+ * Each search first asks the collector whether it wants the search's
+ * statistics, so the search doesn't build them for a collector that would
+ * ignore them.
+ *
+ * @author Jonathan Reimels
+ *
+ */
+public interface StatisticsCollector {
+    /**
+     * Called on the searching thread when a search starts
+     * @return a value passed back to collect() when the search finishes, null if
+     *         the statistics of the search aren't wanted (collect() isn't called)
+     */
+    public Object searchStarted();
+
+    /**
+     * Called on the searching thread when a search finishes, whether or not it
+     * found a path. Not called for searches that are cancelled or fail
+     * @param statistics - The statistics of the search
+     * @param search - The value searchStarted() returned for the search
+     */
+    public void collect(SearchStatistics statistics, Object search);
+}
@@ -6,18 +6,26 @@ import java.awt.Color;
 import java.awt.FlowLayout;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
-import java.awt.geom.Line2D;
-import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
@@ -25,11 +33,15 @@ import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JPopupMenu;
+import javax.swing.SwingUtilities;
 
 import astar.info.Coordinate;
 import astar.info.Grid;
 import astar.pathfinder.Astar;
 import astar.pathfinder.AstarFactory;
+import astar.pathfinder.SearchCancelledException;
+import astar.pathfinder.SearchMonitor;
+import astar.pathfinder.SearchSnapshot;
 
 /**
  * Display GUI with Grid where user can select start and end nodes, and
@@ -37,6 +49,10 @@ import astar.pathfinder.AstarFactory;
  * can be used with various heuristics, selected by the user, to find the
  * shortest path.
  *
+ * Searches run on a background thread over a copy of the grid, so the grid
+ * can still be edited and painted while they run. Pressing Run again cancels
+ * the search, and the cells it has reached are painted as it goes.
+ *
  * @author Jonathan Reimels
  *
  */
@@ -47,20 +63,39 @@ public class AstarGui {
     private static final int DEFAULT_GRID_SIZE = 30;
     private static final String INFO_STRING = "Time: %d ms  |  Steps: %d  |  Path: %d units";
     private static final String DEFAULT_INFO_STRING = "Time: 0 ms  |  Steps: 0  |  Path: 0 units";
+    private static final String SEARCHING_INFO_STRING = "Searching...  |  Steps: %d  |  Open: %d  |  Closed: %d";
+    private static final String CANCELLED_INFO_STRING = "Search cancelled after %d steps";
+    private static final String TIMED_OUT_INFO_STRING = "Search timed out after %d s";
+    private static final String RUN_LABEL = "Run";
+    private static final String CANCEL_LABEL = "Cancel";
+    private static final long SEARCH_TIMEOUT_SECONDS = 30;
+    private static final long SNAPSHOT_INTERVAL_MS = 50; // least time between progress updates
     private static final String GRID_SIZE_LABEL = "Grid Size:";
+    private static final String BIDIRECTIONAL_LABEL = "Bidirectional";
     private static final Color BLOCK_COLOR = Color.DARK_GRAY;
     private static final Color BACKGROUND_COLOR = Color.WHITE;
     private static final Color GRID_COLOR = Color.BLACK;
     private static final Color START_COLOR = Color.GREEN;
     private static final Color END_COLOR = Color.RED;
     private static final Color PATH_COLOR = Color.BLUE;
+    private static final Color OPEN_COLOR = new Color(255, 235, 150);
+    private static final Color CLOSED_COLOR = new Color(180, 210, 255);
+    private static final int LINE_THICKNESS = 2;
+    private static final int MIN_LINED_CELL_SIZE = 6;  // smallest cells (in pixels) to draw grid lines between
+    private static final int MAX_CHANGED_CELLS = 4096; // changed cells to redraw one by one before redrawing them all
 
     // state
     private JFrame _frame;
     private GridBoard _gridBoard;
     private Grid _grid;
     private Astar _implementation = AstarFactory.getDefault();
+    private boolean _bidirectional = false;
     private JLabel _infoLabel;
+    private JButton _runButton;
+    private JCheckBox _bidirectionalBox;
+    private ExecutorService _searchExecutor = Executors.newSingleThreadExecutor(new SearchThreadFactory());
+    private SearchTask _searchTask = null; // the running search, only used on the event thread
+    private SearchSnapshot _snapshot = null; // progress of the running search to paint
 
     /**
      * Create the GUI and instantiate the grid displayed to the user
@@ -87,21 +122,25 @@ public class AstarGui {
         rightTopPanel.setLayout(new FlowLayout());
 
         // create buttons for the top panel
-        JButton runBtn = new JButton("Run");
+        _runButton = new JButton(RUN_LABEL);
         JButton clearBtn = new JButton("Clear");
 
         // create and populate combobox with implemented algorithms
         JComboBox implementationList = new JComboBox(instantiateAlgorithms());
 
+        // create checkbox to search from both the start and end nodes
+        _bidirectionalBox = new JCheckBox(BIDIRECTIONAL_LABEL);
+
         // create and populate combobox for grid sizes
-        Integer[] gridSizes = {10, 20, 30, 40, 50, 60 ,70 ,80, 90, 100};
+        Integer[] gridSizes = {10, 20, 30, 40, 50, 60 ,70 ,80, 90, 100, 200, 500, 1000, 2000};
         JComboBox gridSizeList = new JComboBox(gridSizes);
         gridSizeList.setSelectedItem(DEFAULT_GRID_SIZE);
 
         // set actions for top panel buttons
         clearBtn.addActionListener(new ClearGridListener());
-        runBtn.addActionListener(new  RunGridListener());
+        _runButton.addActionListener(new  RunGridListener());
         implementationList.addActionListener(new SelectImplementationListener());
+        _bidirectionalBox.addActionListener(new SelectBidirectionalListener());
         gridSizeList.addActionListener(new SelectGridSizeListener());
 
         // create label for grid size combobox
@@ -109,9 +148,10 @@ public class AstarGui {
         gridSizeLabel.setText(GRID_SIZE_LABEL);
 
         // add buttons/comboboxes to top panel
-        centerTopPanel.add(runBtn);
+        centerTopPanel.add(_runButton);
         centerTopPanel.add(clearBtn);
         leftTopPanel.add(implementationList);
+        leftTopPanel.add(_bidirectionalBox);
         rightTopPanel.add(gridSizeLabel);
         rightTopPanel.add(gridSizeList);
 
@@ -148,7 +188,10 @@ public class AstarGui {
     }
 
     /**
-     * JPanel display of Grid
+     * JPanel display of Grid. The cells are drawn into an image with one pixel
+     * per cell, which is scaled to fill the panel. Only the pixels of cells
+     * marked with cellChanged() are updated for the next frame (and only their
+     * part of the panel repainted), unless gridChanged() asks for all of them
      */
     private class GridBoard extends JPanel {
 
@@ -157,72 +200,134 @@ public class AstarGui {
          */
         private static final long serialVersionUID = 1711881728225317214L;
 
+        private BufferedImage _image = null;
+        private int[] _pixels;
+        private Grid _imageGrid = null;   // the grid the image was drawn from
+        private boolean _allChanged = true;
+        private int[] _changedCells = new int[64];
+        private int _changedCount = 0;
+
+        /**
+         * Redraw a cell in the next frame, after changing its value
+         * @param coord
+         */
+        public void cellChanged(Coordinate coord) {
+            // past a point redrawing everything is cheaper than keeping the list
+            if (_changedCount == MAX_CHANGED_CELLS) {
+                gridChanged();
+                return;
+            }
+            if (_changedCount == _changedCells.length) {
+                _changedCells = Arrays.copyOf(_changedCells, _changedCount * 2);
+            }
+            _changedCells[_changedCount++] = coord.getRow() * _grid.getWidth() + coord.getCol();
+
+            // repaint just the cell (and its grid lines)
+            int width = getWidth();
+            int height = getHeight();
+            int left = (width * coord.getCol()) / _grid.getWidth();
+            int top = (height * coord.getRow()) / _grid.getHeight();
+            int right = (width * (coord.getCol() + 1)) / _grid.getWidth();
+            int bottom = (height * (coord.getRow() + 1)) / _grid.getHeight();
+            repaint(left - LINE_THICKNESS, top - LINE_THICKNESS,
+                    right - left + 2 * LINE_THICKNESS + 1, bottom - top + 2 * LINE_THICKNESS + 1);
+        }
+
+        /**
+         * Redraw every cell in the next frame, eg. after the grid was cleared or replaced
+         */
+        public void gridChanged() {
+            _allChanged = true;
+            _changedCount = 0;
+            repaint();
+        }
+
         @Override
         public void paintComponent(Graphics g) {
-            try {
-                super.paintComponent(g);
-
-                // hold node color to set
-                Color nodeColor;
-
-                Grid.NodeType nodeValue;
-
-                int lineThickness = 2;
-                int width = getWidth();
-                int height = getHeight();
-                Graphics2D g2d = (Graphics2D) g;
-
-                // draw background
-                g2d.setPaint(BACKGROUND_COLOR);
-                g2d.fill(new Rectangle2D.Double(0, 0, width, height));
-
-                // draw nodes (do this before grid lines, so that the lines appear on top of blocks)
-                for (int row = 0; row < _grid.getSize(); row++) {
-                    for (int col = 0; col < _grid.getSize(); col++) {
-
-                        // get appropriate color for NodeType
-                        nodeValue = _grid.getValue(new Coordinate(row, col));
-                        switch (nodeValue) {
-                            case EMPTY:
-                                continue;
-                            case BLOCK:
-                                nodeColor = BLOCK_COLOR;
-                                break;
-                            case START:
-                                nodeColor = START_COLOR;
-                                break;
-                            case END:
-                                nodeColor = END_COLOR;
-                                break;
-                            case PATH:
-                                nodeColor = PATH_COLOR;
-                                break;
-                            default:
-                                nodeColor = BACKGROUND_COLOR;
-                                break;
-                        }
-
-                        // fill in grid block with selected color
-                        g2d.setPaint(nodeColor);
-                        g2d.fill(new Rectangle2D.Double(
-                            (width * col) / _grid.getSize(),
-                            (height * row) / _grid.getSize(),
-                            width / _grid.getSize(),
-                            height / _grid.getSize()));
-
+            int width = getWidth();
+            int height = getHeight();
+            int cols = _grid.getWidth();
+            int rows = _grid.getHeight();
+            Graphics2D g2d = (Graphics2D) g;
+
+            // bring the image up to date with the grid
+            if (_imageGrid != _grid || _image == null) {
+                _image = new BufferedImage(cols, rows, BufferedImage.TYPE_INT_RGB);
+                _pixels = ((DataBufferInt) _image.getRaster().getDataBuffer()).getData();
+                _imageGrid = _grid;
+                _allChanged = true;
+            }
+            if (_allChanged) {
+                for (int row = 0; row < rows; row++) {
+                    for (int col = 0; col < cols; col++) {
+                        _pixels[row * cols + col] = cellColor(row, col);
                     }
                 }
-
-                // draw grid
-                g2d.setPaint(GRID_COLOR);
-                g2d.setStroke(new BasicStroke(lineThickness));
-                for (int lineNum = 0; lineNum <= _grid.getSize(); lineNum++) {
-                    g2d.draw(new Line2D.Double(0, (height * lineNum) / _grid.getSize(), width, (height * lineNum) / _grid.getSize()));
-                    g2d.draw(new Line2D.Double((width * lineNum) / _grid.getSize(), 0, (width * lineNum) / _grid.getSize(), height));
+            } else {
+                for (int i = 0; i < _changedCount; i++) {
+                    int cell = _changedCells[i];
+                    _pixels[cell] = cellColor(cell / cols, cell % cols);
                 }
-            } catch (Exception ex) {
-                ex.printStackTrace();
             }
+            _allChanged = false;
+            _changedCount = 0;
+
+            // scale the image to the panel, only the area being repainted is drawn
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+            g2d.drawImage(_image, 0, 0, width, height, null);
+
+            // draw grid lines over the cells, unless the cells are too small to see between them
+            if (width / cols < MIN_LINED_CELL_SIZE || height / rows < MIN_LINED_CELL_SIZE) {
+                return;
+            }
+            Rectangle clip = g2d.getClipBounds();
+            if (clip == null) {
+                clip = new Rectangle(0, 0, width, height);
+            }
+            g2d.setPaint(GRID_COLOR);
+            g2d.setStroke(new BasicStroke(LINE_THICKNESS));
+            for (int row = Math.max(clip.y * rows / height - 1, 0); row <= Math.min((clip.y + clip.height) * rows / height + 1, rows); row++) {
+                int y = (height * row) / rows;
+                g2d.drawLine(clip.x, y, clip.x + clip.width, y);
+            }
+            for (int col = Math.max(clip.x * cols / width - 1, 0); col <= Math.min((clip.x + clip.width) * cols / width + 1, cols); col++) {
+                int x = (width * col) / cols;
+                g2d.drawLine(x, clip.y, x, clip.y + clip.height);
+            }
+        }
+
+        /**
+         * Get the color to draw a cell with
+         * @param row
+         * @param col
+         * @return RGB color
+         */
+        private int cellColor(int row, int col) {
+            Coordinate start = _grid.getStart();
+            Coordinate end = _grid.getEnd();
+
+            // start and end nodes take precedence, as they do in Grid.getValue()
+            if (start != null && start.getRow() == row && start.getCol() == col) {
+                return START_COLOR.getRGB();
+            }
+            if (end != null && end.getRow() == row && end.getCol() == col) {
+                return END_COLOR.getRGB();
+            }
+            if (_grid.isBlocked(row, col)) {
+                return BLOCK_COLOR.getRGB();
+            }
+            if (_grid.isPath(row, col)) {
+                return PATH_COLOR.getRGB();
+            }
+
+            // the cells the running search has reached
+            if (_snapshot != null && _snapshot.isClosed(row, col)) {
+                return CLOSED_COLOR.getRGB();
+            }
+            if (_snapshot != null && _snapshot.isOpen(row, col)) {
+                return OPEN_COLOR.getRGB();
+            }
+            return BACKGROUND_COLOR.getRGB();
         }
     }
 
@@ -232,59 +337,211 @@ public class AstarGui {
     private class ClearGridListener implements ActionListener {
         @Override
         public void actionPerformed(ActionEvent a) {
+            cancelSearch();
             _infoLabel.setText(DEFAULT_INFO_STRING);
             _grid.clear();
-            _gridBoard.repaint();
+            _gridBoard.gridChanged();
         }
     }
 
 
     /**
-     * Run the selected algorithm
+     * Run the selected algorithm, or cancel it if it's already running
      */
     private class RunGridListener implements ActionListener {
         @Override
         public void actionPerformed(ActionEvent a) {
+            // the button cancels the search while one is running
+            if (_searchTask != null) {
+                _searchTask.cancel();
+                return;
+            }
+
+            // check that start and end nodes have been set
+            if (_grid.getStart() == null || _grid.getEnd() == null) {
+                JOptionPane.showMessageDialog(null, "Start and End nodes must be set!");
+                return;
+            }
+
+            // clear the previous path (this is safe for the first run)
+            _grid.clearPath();
+
+            // search a copy of the grid, so it can be edited while the search runs
+            _searchTask = new SearchTask(_implementation, _bidirectional, _grid.copy());
+            _searchExecutor.execute(_searchTask);
+
+            // update the GUI
+            _runButton.setText(CANCEL_LABEL);
+            _infoLabel.setText(String.format(SEARCHING_INFO_STRING, 0, 0, 0));
+            _gridBoard.gridChanged();
+        }
+    }
+
+    /**
+     * Search run on the search thread, passing its progress and result back to
+     * the event thread
+     */
+    private class SearchTask implements Runnable, SearchMonitor {
+        private Astar _search;
+        private boolean _searchBidirectional;
+        private Grid _searchGrid;
+        private volatile boolean _cancelled = false;
+        private long _deadline;
+        private long _nextSnapshot;
+
+        // result, set on the search thread before showResult() is queued
+        private ArrayList<Coordinate> _path = null;
+        private boolean _stopped = false;
+        private boolean _timedOut = false;
+
+        /**
+         * Constructor
+         * @param search - The algorithm to run
+         * @param bidirectional - Whether to search from both the start and end nodes
+         * @param grid - The grid to search, not changed by anything else while the search runs
+         */
+        public SearchTask(Astar search, boolean bidirectional, Grid grid) {
+            _search = search;
+            _searchBidirectional = bidirectional;
+            _searchGrid = grid;
+        }
+
+        /**
+         * Stop the search at its next checkpoint (can be called from any thread)
+         */
+        public void cancel() {
+            _cancelled = true;
+        }
+
+        @Override
+        public void run() {
+            long now = System.nanoTime();
+            _deadline = now + TimeUnit.SECONDS.toNanos(SEARCH_TIMEOUT_SECONDS);
+            _nextSnapshot = now + TimeUnit.MILLISECONDS.toNanos(SNAPSHOT_INTERVAL_MS);
+
+            // the algorithm is only configured on this thread, as the last search using
+            //   it may still have been running when this one was started
             try {
-                // check that start and end nodes have been set
-                if (_grid.getStart() == null || _grid.getEnd() == null) {
-                    JOptionPane.showMessageDialog(null, "Start and End nodes must be set!");
-                    return;
+                _search.setBidirectional(_searchBidirectional);
+                _search.setGrid(_searchGrid);
+                _search.setSearchMonitor(this);
+                _path = _search.findPath();
+            } catch (SearchCancelledException ex) {
+                _stopped = true;
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            } finally {
+                _search.setSearchMonitor(null);
+            }
+
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    showResult();
                 }
+            });
+        }
 
-                // clear the previous path (this is safe for the first run)
-                _grid.clearPath();
-                _gridBoard.repaint();
+        @Override
+        public boolean checkpoint(Astar search) {
+            if (_cancelled) {
+                return false;
+            }
+
+            long now = System.nanoTime();
+            if (now > _deadline) {
+                _timedOut = true;
+                return false;
+            }
 
-                // set the grid for Astar to use
-                _implementation.setGrid(_grid);
+            // only copy the open and closed cells every so often, painting is much slower than searching
+            if (now >= _nextSnapshot) {
+                _nextSnapshot = now + TimeUnit.MILLISECONDS.toNanos(SNAPSHOT_INTERVAL_MS);
+                final SearchSnapshot snapshot = search.getSnapshot();
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        showProgress(snapshot);
+                    }
+                });
+            }
+            return true;
+        }
 
-                // call the algorithm
-                ArrayList<Coordinate> path = _implementation.findPath();
+        /**
+         * Paint the progress of the search (on the event thread)
+         * @param snapshot
+         */
+        private void showProgress(SearchSnapshot snapshot) {
+            // ignore searches that have been cancelled or replaced
+            if (_searchTask != this) {
+                return;
+            }
+
+            _snapshot = snapshot;
+            _infoLabel.setText(String.format(SEARCHING_INFO_STRING, snapshot.getStepCount(),
+                    snapshot.getOpenCount(), snapshot.getClosedCount()));
+            _gridBoard.gridChanged();
+        }
+
+        /**
+         * Show the path found by the search (on the event thread)
+         */
+        private void showResult() {
+            // ignore searches that have been cancelled or replaced
+            if (_searchTask != this) {
+                return;
+            }
+
+            _searchTask = null;
+            _snapshot = null;
+            _runButton.setText(RUN_LABEL);
+            _gridBoard.gridChanged();
+
+            try {
+                if (_stopped) {
+                    _infoLabel.setText(_timedOut ? String.format(TIMED_OUT_INFO_STRING, SEARCH_TIMEOUT_SECONDS)
+                            : String.format(CANCELLED_INFO_STRING, _search.getStepCount()));
+                    return;
+                }
 
                 // check if a path couldn't be found
-                if (path == null) {
+                if (_path == null) {
                     JOptionPane.showMessageDialog(null, "Unable to find a path!");
                     return;
                 }
 
                 // iterate through the returned path, and set the path locations on the grid
-                Iterator<Coordinate> pathIter = path.iterator();
+                //   (skipping any that were changed while the search ran)
+                Iterator<Coordinate> pathIter = _path.iterator();
                 while (pathIter.hasNext()) {
-                    _grid.setValue(pathIter.next(), Grid.NodeType.PATH);
+                    Coordinate coord = pathIter.next();
+                    if (_grid.getValue(coord) == Grid.NodeType.EMPTY) {
+                        _grid.setValue(coord, Grid.NodeType.PATH);
+                    }
                 }
 
                 // update the statistics info
-                _infoLabel.setText(String.format(INFO_STRING, _implementation.getRuntime(),_implementation.getStepCount(), _implementation.getDistance()));
-
-                // update the GUI
-                _gridBoard.repaint();
+                _infoLabel.setText(String.format(INFO_STRING, _search.getRuntime(), _search.getStepCount(), _search.getDistance()));
             } catch (Exception ex) {
                 ex.printStackTrace();
             }
         }
     }
 
+    /**
+     * Creates the thread searches run on
+     */
+    private static class SearchThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            // a running search shouldn't stop the application from exiting
+            Thread thread = new Thread(runnable, "astar-search");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
     /**
      * Set which algorithm to use
      */
@@ -294,14 +551,42 @@ public class AstarGui {
             try {
                 // get currently selected Astar Implementation in the combobox
                 JComboBox cb = (JComboBox)a.getSource();
+                cancelSearch();
                 _implementation = (Astar)cb.getSelectedItem();
 
+                // implementations that can't search from both ends run from the start only
+                _bidirectionalBox.setEnabled(_implementation.supportsBidirectional());
+
                 // reset statistics and clear the current path
                 _infoLabel.setText(DEFAULT_INFO_STRING);
                 _grid.clearPath();
 
                 // update the GUI
-                _gridBoard.repaint();
+                _gridBoard.gridChanged();
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Set whether to search from both the start and end nodes
+     */
+    private class SelectBidirectionalListener implements ActionListener {
+        @Override
+        public void actionPerformed(ActionEvent a) {
+            try {
+                // get the state of the checkbox, it's applied to the algorithm when it runs
+                JCheckBox box = (JCheckBox)a.getSource();
+                cancelSearch();
+                _bidirectional = box.isSelected();
+
+                // reset statistics and clear the current path
+                _infoLabel.setText(DEFAULT_INFO_STRING);
+                _grid.clearPath();
+
+                // update the GUI
+                _gridBoard.gridChanged();
             } catch (Exception ex) {
                 ex.printStackTrace();
             }
@@ -320,11 +605,12 @@ public class AstarGui {
                 int size = (Integer)cb.getSelectedItem();
 
                 // reset statistics and update the grid
+                cancelSearch();
                 _infoLabel.setText(DEFAULT_INFO_STRING);
                 _grid = new Grid(size);
 
                 // update the GUI
-                _gridBoard.repaint();
+                _gridBoard.gridChanged();
             } catch (Exception ex) {
                 ex.printStackTrace();
             }
@@ -417,7 +703,7 @@ public class AstarGui {
 
                 // set new value for the coordinate and update the GUI
                 _grid.setValue(_coord, fillValue);
-                _gridBoard.repaint();
+                _gridBoard.cellChanged(_coord);
             } catch (Exception ex) {
                 ex.printStackTrace();
             }
@@ -455,8 +741,14 @@ public class AstarGui {
             public void actionPerformed(ActionEvent a) {
                 try {
                     // set start node to currently selected coordinate
+                    Coordinate previous = _grid.getStart();
                     _grid.setValue(_coord, Grid.NodeType.START);
-                    _gridBoard.repaint();
+
+                    // redraw the cell and the one it replaces
+                    if (previous != null) {
+                        _gridBoard.cellChanged(previous);
+                    }
+                    _gridBoard.cellChanged(_coord);
                 } catch (Exception ex) {
                     ex.printStackTrace();
                 }
@@ -471,8 +763,14 @@ public class AstarGui {
             public void actionPerformed(ActionEvent a) {
                 try {
                     // set end node to currently selected coordinate
+                    Coordinate previous = _grid.getEnd();
                     _grid.setValue(_coord, Grid.NodeType.END);
-                    _gridBoard.repaint();
+
+                    // redraw the cell and the one it replaces
+                    if (previous != null) {
+                        _gridBoard.cellChanged(previous);
+                    }
+                    _gridBoard.cellChanged(_coord);
                 } catch (Exception ex) {
                     ex.printStackTrace();
                 }
@@ -480,6 +778,18 @@ public class AstarGui {
         }
     }
 
+    /**
+     * Cancel the running search, if there is one, and forget its progress
+     */
+    private void cancelSearch() {
+        if (_searchTask != null) {
+            _searchTask.cancel();
+            _searchTask = null;
+            _snapshot = null;
+            _runButton.setText(RUN_LABEL);
+        }
+    }
+
     /**
      * Get and instantiate all implemented Astar algorithms
      * @return array of implemented algorithms